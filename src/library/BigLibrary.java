@@ -1,11 +1,26 @@
 package library;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * BigLibrary represents a large collection of books that might be held by a city or
@@ -16,192 +31,560 @@ import java.util.Set;
  */
 public class BigLibrary implements Library {
 
-    // TODO: rep
-    private Set<BookCopy> inLibrary;
-    private Set<BookCopy> checkedOut;
-    private Map<String, Set<Book>> titleToBooks;
-    private Map<String, Set<Book>> authorToBooks;
-    private Map<Book, Set<BookCopy>> bookToBookCopies;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int FIND_CACHE_CAPACITY = 4096;
+    private static final int FIRST_PAGE_SIZE = 16;
     
-    // TODO: rep invariant
-    //    the intersection of inLibrary and checkedOut is the empty set
+    /*
+     * The ids of the copies of one book owned by this library.  available doubles as an O(1)
+     * free list for checkoutAny.
+     */
+    private static class Holding {
+        private final Book book;
+        private final IdSet copies = new IdSet();
+        private final IdSet available = new IdSet();
+        
+        Holding(Book book) {
+            this.book = book;
+        }
+    }
+    
+    // rep
+    private BookCopy[] copyById;
+    private BitSet available;
+    private BitSet checkedOut;
+    private int[] copyPositionById;
+    private int[] availablePositionById;
+    private int copyCount;
+    private Map<Book, Holding> bookToHolding;
+    private CatalogIndex catalog;
+    private FindCache findCache;
     
-    // TODO: abstraction function
+    // rep invariant
+    //    copyCount <= copyById.length == copyPositionById.length == availablePositionById.length
+    //    available and checkedOut are disjoint, and their union is the set of ids of the
+    //      nonnull copies in copyById
+    //    for 0 <= id < copyCount: copyById[id] is null (lost) or copyById[id].getId() == id
+    //    for id >= copyCount: copyById[id] is null
+    //    bookToHolding maps each book to a holding whose copies are the nonempty set of ids
+    //      in copyById of copies of it, and whose available ids are those of its copies with
+    //      ids in available; copyPositionById is the positions array of the copies sets,
+    //      and availablePositionById of the available sets
+    //    bookToHolding.get(book).book is the key equal to book, and every copy of it has that
+    //      Book instance
+    //    catalog indexes exactly the keys of bookToHolding
+    //    findCache has been told of every book added to or removed from catalog since it
+    //      was made, so its valid results are those of catalog.find
     
-    // TODO: safety from rep exposure argument
+    // abstraction function
+    //    represents the collection of copies in copyById, where a copy is available if its
+    //      id is in available and checked out if it is in checkedOut
+    
+    // safety from rep exposure argument
+    //    all fields are private; allCopies and availableCopies return fresh sets, and
+    //    allCopiesView and availableCopiesView return unmodifiable views of the id sets of a
+    //    holding; Books and Strings are immutable, and the copies shared with clients by
+    //    design only expose their final id
     
     public BigLibrary() {
-        inLibrary = new HashSet<BookCopy>();
-        checkedOut = new HashSet<BookCopy>();
-        titleToBooks = new HashMap<String, Set<Book>>();
-        authorToBooks = new HashMap<String, Set<Book>>();
-        bookToBookCopies = new HashMap<Book, Set<BookCopy>>();
+        copyById = new BookCopy[INITIAL_CAPACITY];
+        available = new BitSet(INITIAL_CAPACITY);
+        checkedOut = new BitSet(INITIAL_CAPACITY);
+        copyPositionById = new int[INITIAL_CAPACITY];
+        availablePositionById = new int[INITIAL_CAPACITY];
+        copyCount = 0;
+        bookToHolding = new HashMap<Book, Holding>();
+        catalog = new CatalogIndex();
+        findCache = new FindCache(FIND_CACHE_CAPACITY);
+        
+        checkRep();
+    }
+    
+    /*
+     * Make a library holding the copies of snapshot, with the same ids and statuses.
+     */
+    private BigLibrary(LibrarySnapshot snapshot) {
+        copyById = snapshot.copyById();
+        checkedOut = snapshot.checkedOut();
+        available = new BitSet(copyById.length);
+        copyPositionById = new int[copyById.length];
+        availablePositionById = new int[copyById.length];
+        copyCount = snapshot.copyCount();
+        bookToHolding = new HashMap<Book, Holding>();
+        catalog = new CatalogIndex();
+        findCache = new FindCache(FIND_CACHE_CAPACITY);
+        
+        // The snapshot's books already share one Book per book and one String per title or
+        // author, so they are catalogued as they are, without canonical()
+        for (int id = 0; id < copyCount; id++) {
+            final BookCopy copy = copyById[id];
+            if (copy == null) {
+                continue;
+            }
+            Holding holding = bookToHolding.get(copy.getBook());
+            if (holding == null) {
+                holding = new Holding(copy.getBook());
+                bookToHolding.put(holding.book, holding);
+                catalog.add(holding.book);
+            }
+            holding.copies.add(id, copyPositionById);
+            if (!checkedOut.get(id)) {
+                available.set(id);
+                holding.available.add(id, availablePositionById);
+            }
+        }
         
         checkRep();
     }
     
-    // assert the rep invariant
+    /**
+     * Load a library saved by save().
+     * @param file snapshot file
+     * @return a new library with copies equal in book, condition, availability and order of
+     *         purchase to the copies of the saved library; the copies themselves are new objects
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public static BigLibrary load(Path file) throws IOException {
+        return new BigLibrary(LibrarySnapshot.read(file));
+    }
+    
+    /**
+     * Save this library to a compact binary snapshot file, to be loaded by load().
+     * The file is replaced atomically, so a crash while saving leaves any old snapshot intact.
+     * @param file snapshot file to write, replacing it if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        LibrarySnapshot.write(file, copyById, checkedOut, copyCount);
+    }
+    
+    /*
+     * @return a copy of the state that save() writes, which can be written with
+     *         LibrarySnapshot.write(Path) while this library goes on changing
+     */
+    LibrarySnapshot snapshot() {
+        return LibrarySnapshot.copyOf(copyById, checkedOut, copyCount);
+    }
+    
+    // assert the rep invariant, scanning the whole rep; only if RepChecks.FULL
     private void checkRep() {
-        for (BookCopy copy: inLibrary) {
-            assert(!checkedOut.contains(copy));
+        if (!RepChecks.FULL) {
+            return;
+        }
+        assert(copyCount <= copyById.length);
+        assert(copyById.length == copyPositionById.length);
+        assert(copyById.length == availablePositionById.length);
+        for (int id = 0; id < copyById.length; id++) {
+            assert((copyById[id] == null) == !(available.get(id) || checkedOut.get(id)));
+            assert(!(available.get(id) && checkedOut.get(id)));
+            assert(copyById[id] == null || (id < copyCount && copyById[id].getId() == id));
+        }
+        assert(catalog.size() == bookToHolding.size());
+        for (Map.Entry<Book, Holding> entry: bookToHolding.entrySet()) {
+            final Holding holding = entry.getValue();
+            assert(entry.getKey() == holding.book);
+            assert(!holding.copies.isEmpty());
+            for (int i = 0; i < holding.copies.size(); i++) {
+                final int id = holding.copies.get(i);
+                assert(copyById[id] != null);
+                assert(copyById[id].getBook() == holding.book);
+                assert(holding.copies.contains(id, copyPositionById));
+                assert(holding.available.contains(id, availablePositionById) == available.get(id));
+            }
+            for (int i = 0; i < holding.available.size(); i++) {
+                assert(holding.copies.contains(holding.available.get(i), copyPositionById));
+            }
+        }
+    }
+    
+    // assert the part of the rep invariant that concerns copy, and the rest only if RepChecks.FULL
+    private void checkRep(BookCopy copy) {
+        final int id = copy.getId();
+        if (id >= 0 && id < copyCount) {
+            assert((copyById[id] == null) == !(available.get(id) || checkedOut.get(id)));
+            assert(!(available.get(id) && checkedOut.get(id)));
         }
+        checkRep();
+    }
+    
+    /*
+     * @return the id that the next copy bought will get
+     */
+    int nextId() {
+        return copyCount;
+    }
+    
+    /*
+     * @return true iff copy was bought from this library and has not been lost
+     */
+    private boolean owns(BookCopy copy) {
+        final int id = copy.getId();
+        return id >= 0 && id < copyCount && copyById[id] == copy;
     }
 
     @Override
     public BookCopy buy(Book book) {
-        final BookCopy copy = new BookCopy(book);
-        inLibrary.add(copy);
-        
-        if (!bookToBookCopies.containsKey(book)) {
-            bookToBookCopies.put(book, new HashSet<BookCopy>());
-            
-            // This is a new book; populate titleToBooks and authorToBooks
-            final String title = book.getTitle();
-            if (!titleToBooks.containsKey(title)) {
-                titleToBooks.put(title, new HashSet<Book>());
-            }
-            titleToBooks.get(title).add(book);
-            
-            final List<String> authors = book.getAuthors();
-            for (String author: authors) {
-                if (!authorToBooks.containsKey(author)) {
-                    authorToBooks.put(author, new HashSet<Book>());
-                }
-                authorToBooks.get(author).add(book);
-            }
+        ensureCapacity(copyCount + 1);
+        final BookCopy copy = addCopy(book);
+        checkRep(copy);
+        return copy;
+    }
+    
+    @Override
+    public List<BookCopy> buyAll(Collection<Book> books) {
+        // grow the copy arrays once, and check the rep once at the end
+        ensureCapacity(copyCount + books.size());
+        final List<BookCopy> copies = new ArrayList<BookCopy>(books.size());
+        for (Book book: books) {
+            copies.add(addCopy(book));
         }
-        bookToBookCopies.get(book).add(copy);
-        
         checkRep();
+        return copies;
+    }
+    
+    /*
+     * Make room in the arrays indexed by id for ids up to capacity - 1, at least doubling
+     * their length if they must grow.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > copyById.length) {
+            final int length = Math.max(capacity, 2 * copyById.length);
+            copyById = Arrays.copyOf(copyById, length);
+            copyPositionById = Arrays.copyOf(copyPositionById, length);
+            availablePositionById = Arrays.copyOf(availablePositionById, length);
+        }
+    }
+    
+    /*
+     * Add a new available copy of book, without checking the rep.  Requires room for its id
+     * in copyById.
+     * @return the new copy
+     */
+    private BookCopy addCopy(Book book) {
+        Holding holding = bookToHolding.get(book);
+        if (holding == null) {
+            // This is a new book; catalogue a canonical instance of it that shares title and
+            // author Strings with the books already held
+            final Book canonical = catalog.canonical(book);
+            holding = new Holding(canonical);
+            bookToHolding.put(canonical, holding);
+            catalog.add(canonical);
+            findCache.changed(canonical);
+        }
         
+        final BookCopy copy = new BookCopy(holding.book, copyCount);
+        copyById[copyCount] = copy;
+        available.set(copyCount);
+        copyCount++;
+        
+        holding.copies.add(copy.getId(), copyPositionById);
+        holding.available.add(copy.getId(), availablePositionById);
         return copy;
     }
     
     @Override
     public void checkout(BookCopy copy) {
-        if (inLibrary.contains(copy)) {
-            inLibrary.remove(copy);
-            checkedOut.add(copy);
-            checkRep();
+        if (move(copy, available, checkedOut)) {
+            checkRep(copy);
         }
     }
     
     @Override
     public void checkin(BookCopy copy) {
-        if (checkedOut.contains(copy)) {
-            checkedOut.remove(copy);
-            inLibrary.add(copy);
-            checkRep();
+        if (move(copy, checkedOut, available)) {
+            checkRep(copy);
         }
     }
     
     @Override
-    public Set<BookCopy> allCopies(Book book) {
-        final Set<BookCopy> copies = new HashSet<BookCopy>();
-        final Set<BookCopy> allCopies = bookToBookCopies.get(book);
-        if (allCopies != null) {
-            copies.addAll(bookToBookCopies.get(book));
+    public void checkoutAll(Collection<BookCopy> copies) {
+        for (BookCopy copy: copies) {
+            move(copy, available, checkedOut);
         }
-        
-        return copies;
+        checkRep();
+    }
+    
+    @Override
+    public void checkinAll(Collection<BookCopy> copies) {
+        for (BookCopy copy: copies) {
+            move(copy, checkedOut, available);
+        }
+        checkRep();
+    }
+    
+    /*
+     * Move copy from the bitset from to the bitset to (available to checkedOut, or back), if
+     * it is owned by this library and in from, without checking the rep.
+     * @return true iff the status of copy changed
+     */
+    private boolean move(BookCopy copy, BitSet from, BitSet to) {
+        if (!owns(copy) || !from.get(copy.getId())) {
+            return false;
+        }
+        from.clear(copy.getId());
+        to.set(copy.getId());
+        final IdSet availableIds = bookToHolding.get(copy.getBook()).available;
+        if (to == available) {
+            availableIds.add(copy.getId(), availablePositionById);
+        } else {
+            availableIds.remove(copy.getId(), availablePositionById);
+        }
+        return true;
+    }
+    
+    @Override
+    public BookCopy checkoutAny(Book book) {
+        final Holding holding = bookToHolding.get(book);
+        if (holding == null || holding.available.isEmpty()) {
+            return null;
+        }
+        final int id = holding.available.removeAny();
+        available.clear(id);
+        checkedOut.set(id);
+        final BookCopy copy = copyById[id];
+        checkRep(copy);
+        return copy;
+    }
+    
+    /**
+     * Get a copy of this library by its id, in O(1) time.
+     * @param id copy id
+     * @return the copy of this library with that id, or null if no copy has that id or the
+     *         copy has been lost
+     */
+    @Override
+    public BookCopy getCopy(int id) {
+        return id >= 0 && id < copyCount ? copyById[id] : null;
+    }
+    
+    @Override
+    public Set<BookCopy> allCopies(Book book) {
+        return new HashSet<BookCopy>(allCopiesView(book));
     }
 
     @Override
     public Set<BookCopy> availableCopies(Book book) {
-        final Set<BookCopy> copies = new HashSet<BookCopy>();
-        final Set<BookCopy> allCopies = bookToBookCopies.get(book);
-        if (allCopies == null) {
-            return copies;
-        }
-        for (BookCopy copy: allCopies) {
-            if (inLibrary.contains(copy)) {
-                copies.add(copy);
-            }
-        }
-        return copies;
+        return new HashSet<BookCopy>(availableCopiesView(book));
     }
     
     @Override
-    public boolean isAvailable(BookCopy copy) {
-        return inLibrary.contains(copy);
+    public Set<BookCopy> allCopiesView(Book book) {
+        final Holding holding = bookToHolding.get(book);
+        if (holding == null) {
+            return Collections.emptySet();
+        }
+        return new CopySetView(holding.copies, false);
     }
     
     @Override
-    public List<Book> find(String query) {
-        List<Book> books = new ArrayList<Book>();
-        if (query.trim().length() == 0) {
-            return books;
+    public Set<BookCopy> availableCopiesView(Book book) {
+        final Holding holding = bookToHolding.get(book);
+        if (holding == null) {
+            return Collections.emptySet();
         }
+        return new CopySetView(holding.available, true);
+    }
+    
+    /*
+     * An unmodifiable view of the copies whose ids are in an IdSet of this library.  The
+     * positions array is read from the library on each use, since buying copies may replace it.
+     */
+    private class CopySetView extends AbstractSet<BookCopy> {
+        private final IdSet ids;
+        private final boolean availableIds;
         
-        for (String title: titleToBooks.keySet()) {
-            if (title.contains(query) || query.contains(title)) {
-                Set<Book> titleBooks = titleToBooks.get(title);
-                for (Book book: titleBooks) {
-                    if (!books.contains(book)) {
-                        addBookSortedByDate(book, books);
-                    }
-                }
+        /*
+         * @param availableIds true if ids is a holding's available set, false if its copies set
+         */
+        CopySetView(IdSet ids, boolean availableIds) {
+            this.ids = ids;
+            this.availableIds = availableIds;
+        }
+        
+        @Override
+        public int size() {
+            return ids.size();
+        }
+        
+        @Override
+        public boolean contains(Object object) {
+            if (!(object instanceof BookCopy)) {
+                return false;
             }
+            final BookCopy copy = (BookCopy) object;
+            return owns(copy) && ids.contains(copy.getId(), availableIds ? availablePositionById : copyPositionById);
         }
         
-        for (String author: authorToBooks.keySet()) {
-            if (author.contains(query) || query.contains(author)) {
-                Set<Book> authorBooks = authorToBooks.get(author);
-                for (Book book: authorBooks) {
-                    if (!books.contains(book)) {
-                        addBookSortedByDate(book, books);
+        @Override
+        public Iterator<BookCopy> iterator() {
+            return new Iterator<BookCopy>() {
+                private int index = 0;
+                
+                @Override
+                public boolean hasNext() {
+                    return index < ids.size();
+                }
+                
+                @Override
+                public BookCopy next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
                     }
+                    return copyById[ids.get(index++)];
                 }
-            }
+            };
+        }
+    }
+    
+    @Override
+    public int availableCount(Book book) {
+        final Holding holding = bookToHolding.get(book);
+        return holding == null ? 0 : holding.available.size();
+    }
+    
+    /**
+     * @return number of copies owned by this library, available or checked out
+     */
+    public int totalCopies() {
+        return available.cardinality() + checkedOut.cardinality();
+    }
+    
+    /**
+     * @return number of copies available in this library
+     */
+    public int totalAvailable() {
+        return available.cardinality();
+    }
+    
+    /**
+     * @return number of copies checked out of this library
+     */
+    public int totalCheckedOut() {
+        return checkedOut.cardinality();
+    }
+    
+    @Override
+    public boolean isAvailable(BookCopy copy) {
+        return owns(copy) && available.get(copy.getId());
+    }
+    
+    /**
+     * @return number of calls to find whose results were served from the cache of recent
+     *         results
+     */
+    public long findCacheHits() {
+        return findCache.hits();
+    }
+    
+    /**
+     * @return number of calls to find whose results had to be computed from the catalogue
+     */
+    public long findCacheMisses() {
+        return findCache.misses();
+    }
+    
+    /**
+     * Forget every cached find result, so that the next finds are computed from the
+     * catalogue.  Does not change the results of any find.
+     */
+    public void clearFindCache() {
+        findCache.clear();
+    }
+    
+    @Override
+    public List<Book> find(String query) {
+        List<Book> books = findCache.get(query, 0, -1);
+        if (books == null) {
+            books = catalog.find(query);
+            findCache.put(query, 0, -1, books);
         }
-        
         return books;
     }
     
     @Override
-    public void lose(BookCopy copy) {
-        final Book book = copy.getBook();
-        final String title = book.getTitle();
-        final List<String> authors = book.getAuthors();
-        
-        if (inLibrary.contains(copy)) {
-            inLibrary.remove(copy);
+    public List<Book> find(String query, int offset, int limit) {
+        List<Book> books = findCache.get(query, offset, limit);
+        if (books == null) {
+            books = catalog.find(query, offset, limit);
+            findCache.put(query, offset, limit, books);
         }
-        
-        if (checkedOut.contains(copy)) {
-            checkedOut.remove(copy);
+        return books;
+    }
+    
+    /**
+     * Search for books lazily, as specified by Library.findStream().  Results are ranked a
+     * page at a time, each page twice the size of the last, so a consumer that takes n books
+     * pays for ranking a small constant multiple of n of them, and one that takes none pays
+     * nothing.  Pages bypass the find cache, so streaming does not evict other results.
+     * @param query search string
+     * @return stream of the books of find(query), in the same order; throws
+     *         ConcurrentModificationException when advanced after a book is added to or
+     *         removed from the catalogue
+     */
+    @Override
+    public Stream<Book> findStream(final String query) {
+        final Spliterator<Book> pages = new Spliterators.AbstractSpliterator<Book>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL) {
+            private final long generation = findCache.generation();
+            private List<Book> page = Collections.emptyList();
+            private int next = 0; // index in page of the next book to return
+            private int offset = 0; // index in find(query) of page.get(0)
+            private int limit = FIRST_PAGE_SIZE; // size of the next page to fetch
+            private boolean last = false; // true iff page is the last page
+            
+            @Override
+            public boolean tryAdvance(Consumer<? super Book> action) {
+                if (findCache.generation() != generation) {
+                    throw new ConcurrentModificationException();
+                }
+                if (next == page.size()) {
+                    if (last) {
+                        return false;
+                    }
+                    offset += page.size();
+                    page = catalog.find(query, offset, limit);
+                    next = 0;
+                    last = page.size() < limit;
+                    limit = (int) Math.min(2L * limit, Integer.MAX_VALUE);
+                    if (page.isEmpty()) {
+                        return false;
+                    }
+                }
+                action.accept(page.get(next++));
+                return true;
+            }
+        };
+        return StreamSupport.stream(pages, false);
+    }
+    
+    @Override
+    public List<String> complete(String prefix, int k) {
+        return catalog.complete(prefix, k);
+    }
+    
+    @Override
+    public void lose(BookCopy copy) {
+        if (!owns(copy)) {
+            return;
         }
+        copyById[copy.getId()] = null;
+        available.clear(copy.getId());
+        checkedOut.clear(copy.getId());
         
-        Set<BookCopy> copies = bookToBookCopies.get(book);
-        copies.remove(copy);
-        if (copies.size() == 0) {
-            bookToBookCopies.remove(book);
-            titleToBooks.get(title).remove(book);
-            for (String author: authors) {
-                authorToBooks.get(author).remove(book);
-            }
+        final Book book = copy.getBook();
+        final Holding holding = bookToHolding.get(book);
+        holding.copies.remove(copy.getId(), copyPositionById);
+        if (holding.available.contains(copy.getId(), availablePositionById)) {
+            holding.available.remove(copy.getId(), availablePositionById);
         }
-    }
-
-    /*
-     * Add book to books.
-     * If another book is in books with the same title and author list, make sure the book
-     * with the newest publication date appears first.
-     */
-    private void addBookSortedByDate(final Book book, List<Book> books) {
-        int length = books.size();
-        int index = 0;
-        Book tempBook;
-        for (int i = 0; i < length; i++) {
-            tempBook = books.get(i);
-            if (tempBook.getTitle().equals(book.getTitle()) && tempBook.getAuthors().equals(book.getAuthors()) && book.getYear() > tempBook.getYear()) {
-                break;
-            }
-            
-            index++;
+        if (holding.copies.isEmpty()) {
+            // That was the last copy; drop the book from every index
+            bookToHolding.remove(book);
+            catalog.remove(book);
+            findCache.changed(book);
         }
         
-        books.add(index, book);
+        checkRep(copy);
     }
 
     /* Copyright (c) 2016 MIT 6.005 course staff, all rights reserved.
@@ -16,12 +16,15 @@ public class Book {
     private final String title;
     private final List<String> authors;
     private final int year;
+    private final int hashCode;
     
     // Rep invariants
     // Title of the book must contain at least one non-space character.
     // Each book must contain at least one author.
     // Each author's name must contain at least one non-space character.
     // The year must be a year in the conventional calendar
+    // authors is an unmodifiable list
+    // hashCode is the hash of title, authors and year, computed once since they never change
     
     // Abstraction function
     // The title, list of authors and publication year map to an edition of a book, not the
@@ -32,7 +35,8 @@ public class Book {
     // to a returned value of the year can effect the internal value of this.year. Also, year
     // is declared to be final so it cannot be changed once it is set.
     // The list of authors returned by getAuthors is an unmodifiable list so it cannot be used
-    // to modify our copy of the list of authors.
+    // to modify our copy of the list of authors, and the constructor copies the list it is
+    // given so the caller cannot modify it either.
     
     /**
      * Make a Book.
@@ -43,8 +47,9 @@ public class Book {
      */
     public Book(String title, List<String> authors, int year) {
         this.title = title;
-        this.authors = new ArrayList<String>(authors);
+        this.authors = Collections.unmodifiableList(new ArrayList<String>(authors));
         this.year = year;
+        this.hashCode = computeHashCode();
         
         checkRep();
     }
@@ -57,6 +62,7 @@ public class Book {
             assert(author.trim().length() > 0);
         }
         assert(year > 0);
+        assert(hashCode == computeHashCode());
     }
     
     /**
@@ -70,7 +76,7 @@ public class Book {
      * @return the authors of this book
      */
     public List<String> getAuthors() {
-        return Collections.unmodifiableList(authors);
+        return authors;
     }
 
     /**
@@ -94,23 +100,27 @@ public class Book {
         if (getClass() != obj.getClass())
             return false;
         Book other = (Book) obj;
-        if (authors == null) {
-            if (other.authors != null)
-                return false;
-        } else if (!authors.equals(other.authors))
-            return false;
-        if (title == null) {
-            if (other.title != null)
-                return false;
-        } else if (!title.equals(other.title))
+        // cheapest comparisons first; unequal hashes mean unequal books
+        if (hashCode != other.hashCode)
             return false;
         if (year != other.year)
             return false;
+        if (!title.equals(other.title))
+            return false;
+        if (!authors.equals(other.authors))
+            return false;
         return true;
     }
      
     @Override
     public int hashCode() {
+        return hashCode;
+    }
+    
+    /*
+     * @return hash of title, authors and year
+     */
+    private int computeHashCode() {
         final int prime = 31;
         int result = 1;
         result = prime * result + ((authors == null) ? 0 : authors.hashCode());
@@ -9,29 +9,46 @@ public class BookCopy {
     // rep
     private final Book book;
     private Condition condition;
+    private final int id;
     
     // rep invariant
     // book is immutable
     // condition is either GOOD or DAMAGED
+    // id is NO_ID or nonnegative
     
     // abstraction function
     // Each book/condition pair gets mapped to a physical copy of a book
     
     // safety from rep exposure argument
-    // create a new Book object with the values of book to prevent nullifying ours
+    // book is immutable, so it is safe to share it with clients
     // return a separate reference to condition to keep our copy from being modified
+    // id is final and primitive, so returning it cannot change it
     
     public static enum Condition {
         GOOD, DAMAGED
     };
     
+    /**
+     * The id of a copy that was not numbered by a library.
+     */
+    public static final int NO_ID = -1;
+    
     /**
      * Make a new BookCopy, initially in good condition.
      * @param book the Book of which this is a copy
      */
     public BookCopy(Book book) {
+        this(book, NO_ID);
+    }
+    
+    /*
+     * Make a new BookCopy, initially in good condition, numbered by the library that owns it.
+     * The library uses id as a dense index into its per-copy state.
+     */
+    BookCopy(Book book, int id) {
         this.book = book;
         this.condition = Condition.GOOD;
+        this.id = id;
         
         checkRep();
     }
@@ -40,13 +57,23 @@ public class BookCopy {
     private void checkRep() {
         assert(book != null);
         assert(condition != null);
+        assert(id == NO_ID || id >= 0);
     }
     
     /**
      * @return the Book of which this is a copy
      */
     public Book getBook() {
-        return new Book(book.getTitle(), book.getAuthors(), book.getYear());
+        return book;
+    }
+    
+    /**
+     * @return the id given to this copy by the library that bought it: ids are dense,
+     * numbered from 0 in order of purchase, and never reused by that library.  NO_ID if
+     * the copy was made directly or by a library that does not number its copies.
+     */
+    public int getId() {
+        return id;
     }
     
     /**
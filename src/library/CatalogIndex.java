@@ -0,0 +1,583 @@
+package library;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * CatalogIndex is a mutable search index over a set of books (the catalogue), answering
+ * Library.find() without scanning the catalogue.  It is not safe for concurrent use.
+ *
+ * Books are found through their titles and author names: by exact key, by keys containing or
+ * contained in the query (SubstringIndex), and by the terms they share with the query
+ * (InvertedIndex).  Results are ranked as described in FindResults.
+ *
+ * A broad query, with at least a threshold number of candidate books, is ranked in parallel
+ * on a ForkJoinPool: the candidates are split by hash into partitions of distinct books,
+ * which are counted and sorted independently, and the sorted partitions are merged.  find
+ * is then still safe to call concurrently with other finds, but not with add or remove.
+ */
+class CatalogIndex {
+
+    // queries with fewer candidates than this are ranked on the calling thread
+    static final int PARALLEL_THRESHOLD = 20000;
+    // most partitions a query's candidates are split into
+    private static final int MAX_PARTITIONS = 256;
+
+    /*
+     * Rank the candidates of partitions lo..hi-1 of a query.  Each partition holds the
+     * candidates whose books fall in it by hash, so the partitions are disjoint sets of books
+     * that can be ranked independently and merged.
+     */
+    private static class RankTask extends RecursiveTask<List<FindResults.Match>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Book[] books;
+        private final int[] flags;
+        private final int[][] partitions;
+        private final int lo;
+        private final int hi;
+
+        /*
+         * @param books candidate books; a book may occur more than once
+         * @param flags for each candidate, the key match flag it contributes, or 0 if it is
+         *        a term match
+         * @param partitions for each partition, the indexes of its candidates in books
+         */
+        RankTask(Book[] books, int[] flags, int[][] partitions, int lo, int hi) {
+            this.books = books;
+            this.flags = flags;
+            this.partitions = partitions;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected List<FindResults.Match> compute() {
+            if (hi - lo == 1) {
+                final FindResults results = new FindResults();
+                for (int candidate: partitions[lo]) {
+                    if (flags[candidate] == 0) {
+                        results.addTermMatch(books[candidate]);
+                    } else {
+                        results.addKeyMatch(books[candidate], flags[candidate]);
+                    }
+                }
+                return results.ranked();
+            }
+            final int mid = (lo + hi) >>> 1;
+            final RankTask left = new RankTask(books, flags, partitions, lo, mid);
+            left.fork();
+            final List<FindResults.Match> right = new RankTask(books, flags, partitions, mid, hi).compute();
+            return merge(left.join(), right);
+        }
+
+        /*
+         * @return the matches of two lists ordered by RANKING, in that order
+         */
+        private static List<FindResults.Match> merge(List<FindResults.Match> ranked1,
+                List<FindResults.Match> ranked2) {
+            final List<FindResults.Match> merged = new ArrayList<FindResults.Match>(ranked1.size() + ranked2.size());
+            int i = 0;
+            int j = 0;
+            while (i < ranked1.size() && j < ranked2.size()) {
+                if (FindResults.RANKING.compare(ranked1.get(i), ranked2.get(j)) <= 0) {
+                    merged.add(ranked1.get(i++));
+                } else {
+                    merged.add(ranked2.get(j++));
+                }
+            }
+            merged.addAll(ranked1.subList(i, ranked1.size()));
+            merged.addAll(ranked2.subList(j, ranked2.size()));
+            return merged;
+        }
+    }
+
+    // rep
+    private final Map<String, Set<Book>> titleToBooks;
+    private final Map<String, Set<Book>> authorToBooks;
+    private final InvertedIndex termIndex;
+    private final SubstringIndex titleIndex;
+    private final SubstringIndex authorIndex;
+    private int size;
+    private final ForkJoinPool pool;
+    private final int parallelThreshold;
+
+    // rep invariant
+    //    titleToBooks maps each title of an indexed book to the nonempty set of indexed books
+    //      with that title, and authorToBooks likewise for author names
+    //    termIndex, titleToBooks and authorToBooks index exactly the same books
+    //    the books under a key of titleToBooks (authorToBooks) all hold that key's instance
+    //      of the String as their title (author)
+    //    titleIndex holds exactly the keys of titleToBooks, authorIndex those of authorToBooks,
+    //      each weighted by the number of books under it
+    //    size is the number of indexed books
+    //    parallelThreshold >= 0
+    //
+    // abstraction function
+    //    represents the catalogue of books in the sets of titleToBooks
+    //
+    // safety from rep exposure argument
+    //    all fields are private and never returned; find returns fresh lists of immutable Books
+
+    /**
+     * Make an empty index that ranks broad queries on the common fork-join pool.
+     */
+    public CatalogIndex() {
+        this(ForkJoinPool.commonPool(), PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Make an empty index.
+     * @param pool pool to rank broad queries on
+     * @param parallelThreshold number of candidate books from which a query is ranked on pool
+     *        rather than on the calling thread, nonnegative
+     */
+    public CatalogIndex(ForkJoinPool pool, int parallelThreshold) {
+        this.pool = pool;
+        this.parallelThreshold = parallelThreshold;
+        titleToBooks = new HashMap<String, Set<Book>>();
+        authorToBooks = new HashMap<String, Set<Book>>();
+        termIndex = new InvertedIndex();
+        titleIndex = new SubstringIndex();
+        authorIndex = new SubstringIndex();
+        size = 0;
+    }
+
+    /**
+     * @return number of books in the catalogue
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Make the instance of a book to add to this index: a Book equal to book whose title and
+     * author Strings are the instances already held by this index, if any, so that books
+     * sharing a title or an author share one String.
+     * @param book book to canonicalize
+     * @return new Book equal to book
+     */
+    public Book canonical(Book book) {
+        final Set<Book> sameTitle = titleToBooks.get(book.getTitle());
+        final String title = sameTitle == null ? book.getTitle() : sameTitle.iterator().next().getTitle();
+
+        final List<String> authors = new ArrayList<String>(book.getAuthors().size());
+        for (String author: book.getAuthors()) {
+            authors.add(canonicalAuthor(author));
+        }
+        return new Book(title, authors, book.getYear());
+    }
+
+    /**
+     * Add a book to the catalogue.
+     * @param book book to add; must not be in the catalogue, and should have been made by
+     *        canonical() so that it shares Strings with the books already indexed
+     */
+    public void add(Book book) {
+        addToIndex(titleToBooks, titleIndex, book.getTitle(), book);
+        for (String author: distinctAuthors(book)) {
+            addToIndex(authorToBooks, authorIndex, author, book);
+        }
+        termIndex.add(book);
+        size++;
+    }
+
+    /**
+     * Remove a book from the catalogue.
+     * @param book book to remove; must be in the catalogue
+     */
+    public void remove(Book book) {
+        removeFromIndex(titleToBooks, titleIndex, book.getTitle(), book);
+        for (String author: distinctAuthors(book)) {
+            removeFromIndex(authorToBooks, authorIndex, author, book);
+        }
+        termIndex.remove(book);
+        size--;
+    }
+
+    /**
+     * Search the catalogue.
+     * @param query search string
+     * @return books in the catalogue matching query, as specified by Library.find()
+     */
+    public List<Book> find(String query) {
+        if (query.trim().length() == 0) {
+            return new ArrayList<Book>();
+        }
+
+        final Set<String> queryTerms = InvertedIndex.terms(query);
+        final Set<String> titleKeys = matchingKeys(titleIndex, query);
+        final Set<String> authorKeys = matchingKeys(authorIndex, query);
+
+        int candidateCount = 0;
+        for (String term: queryTerms) {
+            candidateCount += termIndex.postings(term).size();
+        }
+        for (String key: titleKeys) {
+            candidateCount += titleToBooks.get(key).size();
+        }
+        for (String key: authorKeys) {
+            candidateCount += authorToBooks.get(key).size();
+        }
+        if (candidateCount >= parallelThreshold) {
+            return findInParallel(query, queryTerms, titleKeys, authorKeys, candidateCount);
+        }
+
+        final FindResults results = new FindResults();
+
+        // count the distinct query terms in each book, touching only their postings
+        for (String term: queryTerms) {
+            for (Book book: termIndex.postings(term)) {
+                results.addTermMatch(book);
+            }
+        }
+
+        // flag titles and authors that match the whole query as a substring
+        addKeyMatches(query, titleKeys, titleToBooks, results);
+        addKeyMatches(query, authorKeys, authorToBooks, results);
+
+        return results.toList();
+    }
+
+    /**
+     * Search the catalogue for one page of results.
+     * @param query search string
+     * @param offset number of results to skip, nonnegative
+     * @param limit maximum number of results to return, nonnegative
+     * @return books of find(query) from index offset to offset + limit, as specified by
+     *         Library.find(String, int, int)
+     */
+    public List<Book> find(String query, int offset, int limit) {
+        if (query.trim().length() == 0 || limit == 0 || offset >= size) {
+            return new ArrayList<Book>();
+        }
+
+        final List<Set<Book>> postings = new ArrayList<Set<Book>>();
+        for (String term: InvertedIndex.terms(query)) {
+            postings.add(termIndex.postings(term));
+        }
+        final TopResults top = new TopResults((int) Math.min((long) offset + limit, Integer.MAX_VALUE));
+
+        // Visit candidates in tiers by their best flag, offering each book once: in the tier of
+        // its best flag, under the first of its title and authors with that flag.  A book of a
+        // later tier ranks below every book of the earlier tiers, so once the page is full no
+        // later tier can change it.  Within a tier, a title is skipped unseen once the page is
+        // full of books ranked above any book with that title could be.
+        final Set<String> exact = Collections.singleton(query);
+        final Set<String> titlesContainedIn = titleIndex.keysContainedIn(query);
+        final Set<String> authorsContainedIn = authorIndex.keysContainedIn(query);
+        final int possibleFlags = FindResults.EXACT_MATCH | FindResults.CONTAINS_QUERY
+                | (hasOtherKey(titlesContainedIn, query) || hasOtherKey(authorsContainedIn, query)
+                        ? FindResults.CONTAINED_IN_QUERY : 0);
+        if (offerTier(exact, exact, FindResults.EXACT_MATCH, possibleFlags, query, postings, top)) {
+            return top.page(offset);
+        }
+        if (offerTier(titleIndex.keysContaining(query), authorIndex.keysContaining(query),
+                FindResults.CONTAINS_QUERY, possibleFlags, query, postings, top)) {
+            return top.page(offset);
+        }
+        if (offerTier(titlesContainedIn, authorsContainedIn,
+                FindResults.CONTAINED_IN_QUERY, possibleFlags, query, postings, top)) {
+            return top.page(offset);
+        }
+        offerTermMatches(query, postings, top);
+        return top.page(offset);
+    }
+
+    /**
+     * Complete a prefix to the titles and author names with the most books.
+     * @param prefix prefix to complete
+     * @param k maximum number of completions, nonnegative
+     * @return as specified by Library.complete()
+     */
+    public List<String> complete(String prefix, int k) {
+        final List<String> titles = titleIndex.complete(prefix, k);
+        final List<String> authors = authorIndex.complete(prefix, k);
+
+        // merge the two lists, each heaviest first, keeping a key in both only once
+        final List<String> completions = new ArrayList<String>();
+        int i = 0;
+        int j = 0;
+        while (completions.size() < k && (i < titles.size() || j < authors.size())) {
+            final String next;
+            if (j == authors.size() || (i < titles.size()
+                    && compareCompletions(titles.get(i), titleToBooks, authors.get(j), authorToBooks) <= 0)) {
+                next = titles.get(i++);
+            } else {
+                next = authors.get(j++);
+            }
+            if (!completions.contains(next)) {
+                completions.add(next);
+            }
+        }
+        return completions;
+    }
+
+    /*
+     * Compare two keys by decreasing number of books, then by the keys.
+     */
+    private static int compareCompletions(String key1, Map<String, Set<Book>> keyToBooks1,
+            String key2, Map<String, Set<Book>> keyToBooks2) {
+        final int byWeight = Integer.compare(keyToBooks2.get(key2).size(), keyToBooks1.get(key1).size());
+        return byWeight != 0 ? byWeight : key1.compareTo(key2);
+    }
+
+    /*
+     * Rank the books matching query on pool, as specified by Library.find().
+     * @param queryTerms InvertedIndex.terms(query)
+     * @param titleKeys titles that equal, contain or are contained in query
+     * @param authorKeys authors that equal, contain or are contained in query
+     * @param candidateCount total number of postings of queryTerms and books under the keys
+     */
+    private List<Book> findInParallel(String query, Set<String> queryTerms, Set<String> titleKeys,
+            Set<String> authorKeys, int candidateCount) {
+        final int partitionCount = Math.min(MAX_PARTITIONS, Integer.highestOneBit(4 * pool.getParallelism()));
+        final Book[] books = new Book[candidateCount];
+        final int[] flags = new int[candidateCount];
+        final int[] partitionOf = new int[candidateCount];
+        final int[] partitionSizes = new int[partitionCount];
+
+        // list every candidate with the match it contributes, and count each partition
+        int count = 0;
+        for (String term: queryTerms) {
+            count = addCandidates(termIndex.postings(term), 0, books, flags, count);
+        }
+        for (String key: titleKeys) {
+            count = addCandidates(titleToBooks.get(key), FindResults.keyMatch(key, query), books, flags, count);
+        }
+        for (String key: authorKeys) {
+            count = addCandidates(authorToBooks.get(key), FindResults.keyMatch(key, query), books, flags, count);
+        }
+        for (int i = 0; i < count; i++) {
+            final int hash = books[i].hashCode();
+            partitionOf[i] = (hash ^ (hash >>> 16)) & (partitionCount - 1);
+            partitionSizes[partitionOf[i]]++;
+        }
+
+        final int[][] partitions = new int[partitionCount][];
+        for (int p = 0; p < partitionCount; p++) {
+            partitions[p] = new int[partitionSizes[p]];
+            partitionSizes[p] = 0;
+        }
+        for (int i = 0; i < count; i++) {
+            partitions[partitionOf[i]][partitionSizes[partitionOf[i]]++] = i;
+        }
+
+        return FindResults.books(pool.invoke(new RankTask(books, flags, partitions, 0, partitionCount)));
+    }
+
+    /*
+     * Append each book of set to books, with flag to flags, starting at index count.
+     * @return the new count
+     */
+    private static int addCandidates(Set<Book> set, int flag, Book[] books, int[] flags, int count) {
+        for (Book book: set) {
+            books[count] = book;
+            flags[count] = flag;
+            count++;
+        }
+        return count;
+    }
+
+    /*
+     * @return the instance of author held by this index, or author itself if none is
+     */
+    private String canonicalAuthor(String author) {
+        final Set<Book> sameAuthor = authorToBooks.get(author);
+        if (sameAuthor != null) {
+            for (String canonical: sameAuthor.iterator().next().getAuthors()) {
+                if (canonical.equals(author)) {
+                    return canonical;
+                }
+            }
+        }
+        return author;
+    }
+
+    /*
+     * @return the keys of keyIndex that equal, contain or are contained in query
+     */
+    private static Set<String> matchingKeys(SubstringIndex keyIndex, String query) {
+        final Set<String> keys = keyIndex.keysContaining(query);
+        keys.addAll(keyIndex.keysContainedIn(query));
+        return keys;
+    }
+
+    /*
+     * Add every book under keys in keyToBooks, flagged with how its key matches query.
+     */
+    private static void addKeyMatches(String query, Set<String> keys,
+            Map<String, Set<Book>> keyToBooks, FindResults results) {
+        for (String key: keys) {
+            final int flag = FindResults.keyMatch(key, query);
+            for (Book book: keyToBooks.get(key)) {
+                results.addKeyMatch(book, flag);
+            }
+        }
+    }
+
+    /*
+     * Offer to top the books under titleKeys and authorKeys whose best flag for query is
+     * tierFlag.
+     * @param possibleFlags flags that some book may have for query
+     * @param postings postings of the distinct terms of query
+     * @return true iff top is full of books ranked above any book of a later tier
+     */
+    private boolean offerTier(Set<String> titleKeys, Set<String> authorKeys, int tierFlag,
+            int possibleFlags, String query, List<Set<Book>> postings, TopResults top) {
+        final int tierMaxScore = FindResults.maxScore(tierFlag, possibleFlags, postings.size());
+        offerKeys(titleKeys, titleToBooks, true, tierFlag, tierMaxScore, query, postings, top);
+        offerKeys(authorKeys, authorToBooks, false, tierFlag, tierMaxScore, query, postings, top);
+        return top.excludes(tierFlag - 1);
+    }
+
+    /*
+     * Offer to top the books under those keys in keyToBooks that match query with tierFlag,
+     * if tierFlag is their best flag and the key is the first of their title and authors with
+     * it.  The keys are titles if titles is true, authors otherwise.
+     * @param tierMaxScore highest score a book with best flag tierFlag can have
+     */
+    private static void offerKeys(Set<String> keys, Map<String, Set<Book>> keyToBooks, boolean titles,
+            int tierFlag, int tierMaxScore, String query, List<Set<Book>> postings, TopResults top) {
+        for (String key: keys) {
+            if (top.excludes(tierMaxScore)) {
+                return;
+            }
+            if (titles && top.excludes(tierMaxScore, key)) {
+                // every book under key is titled key
+                continue;
+            }
+            final Set<Book> books = keyToBooks.get(key);
+            if (books == null || FindResults.keyMatch(key, query) != tierFlag) {
+                continue;
+            }
+            for (Book book: books) {
+                if (top.excludes(tierMaxScore, book.getTitle())) {
+                    continue;
+                }
+                final int flags = FindResults.keyFlags(book, query);
+                if (Integer.highestOneBit(flags) == tierFlag && isFirstKeyWith(book, key, titles, query, tierFlag)) {
+                    top.offer(book, FindResults.score(flags, termCount(book, postings)));
+                }
+            }
+        }
+    }
+
+    /*
+     * Offer to top the books that match query only through its terms, each under the first
+     * term it contains.
+     * @param postings postings of the distinct terms of query
+     */
+    private static void offerTermMatches(String query, List<Set<Book>> postings, TopResults top) {
+        final int maxScore = FindResults.maxScore(0, 0, postings.size());
+        for (int i = 0; i < postings.size(); i++) {
+            for (Book book: postings.get(i)) {
+                if (top.excludes(maxScore)) {
+                    return;
+                }
+                if (top.excludes(maxScore, book.getTitle())) {
+                    continue;
+                }
+                if (!isInAny(book, postings, i) && FindResults.keyFlags(book, query) == 0) {
+                    top.offer(book, FindResults.score(0, termCount(book, postings)));
+                }
+            }
+        }
+    }
+
+    /*
+     * @return true iff key is the first of book's title and authors to match query with flag,
+     *         where titles tells whether key is book's title or one of its authors
+     */
+    private static boolean isFirstKeyWith(Book book, String key, boolean titles, String query, int flag) {
+        if (FindResults.keyMatch(book.getTitle(), query) == flag) {
+            return titles;
+        }
+        for (String author: book.getAuthors()) {
+            if (FindResults.keyMatch(author, query) == flag) {
+                return !titles && author.equals(key);
+            }
+        }
+        return false;
+    }
+
+    /*
+     * @return true iff keys has a key other than query
+     */
+    private static boolean hasOtherKey(Set<String> keys, String query) {
+        return keys.size() > (keys.contains(query) ? 1 : 0);
+    }
+
+    /*
+     * @return number of the sets in postings that contain book
+     */
+    private static int termCount(Book book, List<Set<Book>> postings) {
+        int count = 0;
+        for (Set<Book> books: postings) {
+            if (books.contains(book)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /*
+     * @return true iff one of the first count sets in postings contains book
+     */
+    private static boolean isInAny(Book book, List<Set<Book>> postings, int count) {
+        for (int i = 0; i < count; i++) {
+            if (postings.get(i).contains(book)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * @return the distinct authors of book; a book may list the same author more than once,
+     *         but is indexed under each author only once
+     */
+    private static Set<String> distinctAuthors(Book book) {
+        return new LinkedHashSet<String>(book.getAuthors());
+    }
+
+    /*
+     * Add book to index.get(key), adding key to index and keyIndex if it is new.
+     */
+    private static void addToIndex(Map<String, Set<Book>> index, SubstringIndex keyIndex,
+            String key, Book book) {
+        Set<Book> books = index.get(key);
+        if (books == null) {
+            books = new HashSet<Book>();
+            index.put(key, books);
+            keyIndex.add(key);
+        }
+        books.add(book);
+        keyIndex.setWeight(key, books.size());
+    }
+
+    /*
+     * Remove book from index.get(key), dropping key from index and keyIndex once no books
+     * are left under it.
+     */
+    private static void removeFromIndex(Map<String, Set<Book>> index, SubstringIndex keyIndex,
+            String key, Book book) {
+        final Set<Book> books = index.get(key);
+        books.remove(book);
+        if (books.isEmpty()) {
+            index.remove(key);
+            keyIndex.remove(key);
+        } else {
+            keyIndex.setWeight(key, books.size());
+        }
+    }
+
+}
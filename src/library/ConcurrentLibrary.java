@@ -0,0 +1,432 @@
+package library;
+
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * ConcurrentLibrary is a Library that may be shared by many threads, like the checkout desks
+ * of all the branches of a library system.
+ *
+ * Checking a copy out or in locks only that copy, so operations on different copies never
+ * contend.  find runs concurrently with other finds against a consistent catalogue index;
+ * buy and lose lock only the copies of the affected book, and take the index's write lock
+ * only when a book's first copy is bought or its last copy is lost.
+ */
+public class ConcurrentLibrary implements Library {
+
+    // status of a copy
+    private static final byte LOST = 0;
+    private static final byte AVAILABLE = 1;
+    private static final byte CHECKED_OUT = 2;
+
+    /*
+     * The copies of one book owned by this library.  Copies are added and removed only while
+     * holding the Holding's lock; once removed is set, the holding is dead and a new one must
+     * be made for the book.
+     */
+    private static class Holding {
+        private final Book book;
+        private final Set<BookCopy> copies = Collections.newSetFromMap(new ConcurrentHashMap<BookCopy, Boolean>());
+        private final Set<BookCopy> available = Collections.newSetFromMap(new ConcurrentHashMap<BookCopy, Boolean>());
+        private boolean catalogued; // guarded by this
+        private boolean removed; // guarded by this
+
+        Holding(Book book) {
+            this.book = book;
+        }
+    }
+
+    /*
+     * A read-only view of the copies of a holding, which reads them under the holding's lock
+     * and never iterates over a copy that has been lost.
+     */
+    private class CopiesView extends AbstractSet<BookCopy> {
+        private final Holding holding;
+
+        CopiesView(Holding holding) {
+            this.holding = holding;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            synchronized (holding) {
+                return holding.copies.contains(o);
+            }
+        }
+
+        @Override
+        public int size() {
+            synchronized (holding) {
+                return holding.copies.size();
+            }
+        }
+
+        @Override
+        public Iterator<BookCopy> iterator() {
+            final Iterator<BookCopy> copies = holding.copies.iterator();
+            return new Iterator<BookCopy>() {
+                private BookCopy next = advance();
+
+                /*
+                 * @return the next copy of copies that is not lost, or null if none
+                 */
+                private BookCopy advance() {
+                    while (copies.hasNext()) {
+                        final BookCopy copy = copies.next();
+                        if (stateOf(copy) != null) {
+                            return copy;
+                        }
+                    }
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public BookCopy next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    final BookCopy copy = next;
+                    next = advance();
+                    return copy;
+                }
+            };
+        }
+    }
+
+    /*
+     * The status of one copy owned by this library.  status changes, and the copy moves in
+     * or out of its holding's available set, only while holding the CopyState's lock.
+     */
+    private static class CopyState {
+        private final BookCopy copy;
+        private final Holding holding;
+        private volatile byte status;
+
+        CopyState(BookCopy copy, Holding holding) {
+            this.copy = copy;
+            this.holding = holding;
+            this.status = AVAILABLE;
+        }
+    }
+
+    // rep
+    private final ConcurrentMap<Integer, CopyState> stateById;
+    private final AtomicInteger nextId;
+    private final ConcurrentMap<Book, Holding> bookToHolding;
+    private final CatalogIndex catalog;
+    private final ReadWriteLock catalogLock;
+
+    // rep invariant
+    //    stateById maps the id of each copy owned by this library and not lost to its
+    //      CopyState, whose status is AVAILABLE or CHECKED_OUT and whose copy has that id
+    //    every id in stateById is less than nextId
+    //    for each state in stateById: state.copy is in state.holding.copies, and is in
+    //      holding.available iff its status is AVAILABLE
+    //    bookToHolding maps each book to a live holding whose copies are nonempty, except
+    //      briefly while its first copy is being bought
+    //    bookToHolding.get(book).book is the key equal to book, and every copy of it has that
+    //      Book instance
+    //    catalog indexes exactly the books of the catalogued holdings in bookToHolding
+    //
+    // abstraction function
+    //    represents the copies of the states in stateById, where a copy is available
+    //      if its status is AVAILABLE and checked out if it is CHECKED_OUT
+    //
+    // safety from rep exposure argument
+    //    all fields are private; allCopies and availableCopies return fresh sets,
+    //    allCopiesView returns a read-only CopiesView of a holding's copies, and
+    //    availableCopiesView wraps its available set in an unmodifiable view; Books are
+    //    immutable and BookCopys are shared with clients by design
+    //
+    // thread safety argument
+    //    stateById and bookToHolding are thread-safe maps, the sets of a holding are
+    //      thread-safe sets, and nextId is atomic
+    //    a copy's status, its membership in holding.available and its removal from stateById
+    //      change together only while holding the CopyState's lock, so no copy is ever both
+    //      available and checked out, or checked out after it was lost;
+    //      status is volatile so isAvailable can read it without the lock
+    //    a holding's copies, catalogued and removed change only while holding the Holding's
+    //      lock, so a copy is never added to a holding whose last copy was just lost
+    //    a copy is added to or removed from stateById and holding.copies together, under the
+    //      Holding's lock and then the CopyState's, and allCopies and the view of copies read
+    //      holding.copies under the Holding's lock, so they never return a copy that getCopy
+    //      already treats as lost
+    //    a Holding's lock is always taken before a CopyState's, never while holding one
+    //    catalog is read only under catalogLock's read lock and written only under its
+    //      write lock, which is taken with a Holding's lock held, never the other way round
+
+    /**
+     * Make an empty library.
+     */
+    public ConcurrentLibrary() {
+        stateById = new ConcurrentHashMap<Integer, CopyState>();
+        nextId = new AtomicInteger();
+        bookToHolding = new ConcurrentHashMap<Book, Holding>();
+        catalog = new CatalogIndex();
+        catalogLock = new ReentrantReadWriteLock();
+    }
+
+    // assert the part of the rep invariant that concerns state; requires state's lock
+    private void checkRep(CopyState state) {
+        assert((state.status == LOST) == (stateById.get(state.copy.getId()) != state));
+        assert(state.holding.available.contains(state.copy) == (state.status == AVAILABLE));
+    }
+
+    /*
+     * @return the state of copy, or null if copy is not owned by this library or was lost
+     */
+    private CopyState stateOf(BookCopy copy) {
+        final CopyState state = stateById.get(copy.getId());
+        return state != null && state.copy == copy ? state : null;
+    }
+
+    @Override
+    public BookCopy buy(Book book) {
+        while (true) {
+            Holding holding = bookToHolding.get(book);
+            if (holding == null) {
+                holding = newHolding(book);
+            }
+            synchronized (holding) {
+                if (holding.removed) {
+                    // its last copy was lost after we looked it up; try again
+                    continue;
+                }
+                if (!holding.catalogued) {
+                    catalogLock.writeLock().lock();
+                    try {
+                        catalog.add(holding.book);
+                    } finally {
+                        catalogLock.writeLock().unlock();
+                    }
+                    holding.catalogued = true;
+                }
+
+                final BookCopy copy = new BookCopy(holding.book, nextId.getAndIncrement());
+                final CopyState state = new CopyState(copy, holding);
+                synchronized (state) {
+                    stateById.put(copy.getId(), state);
+                    holding.copies.add(copy);
+                    holding.available.add(copy);
+                    checkRep(state);
+                }
+                return copy;
+            }
+        }
+    }
+
+    /*
+     * Make the holding for book, unless another thread makes it first.
+     * @return the holding for book in bookToHolding
+     */
+    private Holding newHolding(Book book) {
+        final Book canonical;
+        catalogLock.readLock().lock();
+        try {
+            canonical = catalog.canonical(book);
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+        final Holding holding = new Holding(canonical);
+        final Holding existing = bookToHolding.putIfAbsent(canonical, holding);
+        return existing == null ? holding : existing;
+    }
+
+    @Override
+    public void checkout(BookCopy copy) {
+        final CopyState state = stateOf(copy);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            if (state.status == AVAILABLE) {
+                state.status = CHECKED_OUT;
+                state.holding.available.remove(copy);
+                checkRep(state);
+            }
+        }
+    }
+
+    @Override
+    public void checkin(BookCopy copy) {
+        final CopyState state = stateOf(copy);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            if (state.status == CHECKED_OUT) {
+                state.status = AVAILABLE;
+                state.holding.available.add(copy);
+                checkRep(state);
+            }
+        }
+    }
+
+    /**
+     * Check out any available copy of a book, as specified by Library.checkoutAny().  Unlike
+     * BigLibrary's, this is not O(1): it walks the book's concurrent set of available copies,
+     * whose iterator may pass over empty hash bins, and skips copies other threads claim
+     * meanwhile, so it may take time linear in the number of copies the book has had.
+     */
+    @Override
+    public BookCopy checkoutAny(Book book) {
+        final Holding holding = bookToHolding.get(book);
+        if (holding == null) {
+            return null;
+        }
+        // Another thread may claim a copy between our seeing it in available and locking
+        // it, so claim each candidate under its lock until one is still available
+        for (BookCopy copy: holding.available) {
+            final CopyState state = stateOf(copy);
+            if (state == null) {
+                continue;
+            }
+            synchronized (state) {
+                if (state.status == AVAILABLE) {
+                    state.status = CHECKED_OUT;
+                    holding.available.remove(copy);
+                    checkRep(state);
+                    return copy;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public BookCopy getCopy(int id) {
+        final CopyState state = stateById.get(id);
+        return state == null ? null : state.copy;
+    }
+
+    @Override
+    public boolean isAvailable(BookCopy copy) {
+        final CopyState state = stateOf(copy);
+        return state != null && state.status == AVAILABLE;
+    }
+
+    @Override
+    public Set<BookCopy> allCopies(Book book) {
+        final Holding holding = bookToHolding.get(book);
+        if (holding == null) {
+            return new HashSet<BookCopy>();
+        }
+        synchronized (holding) {
+            return new HashSet<BookCopy>(holding.copies);
+        }
+    }
+
+    @Override
+    public Set<BookCopy> availableCopies(Book book) {
+        final Holding holding = bookToHolding.get(book);
+        if (holding == null) {
+            return new HashSet<BookCopy>();
+        }
+        return new HashSet<BookCopy>(holding.available);
+    }
+
+    @Override
+    public Set<BookCopy> allCopiesView(Book book) {
+        final Holding holding = bookToHolding.get(book);
+        if (holding == null) {
+            return Collections.emptySet();
+        }
+        return new CopiesView(holding);
+    }
+
+    @Override
+    public Set<BookCopy> availableCopiesView(Book book) {
+        final Holding holding = bookToHolding.get(book);
+        if (holding == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(holding.available);
+    }
+
+    @Override
+    public int availableCount(Book book) {
+        final Holding holding = bookToHolding.get(book);
+        return holding == null ? 0 : holding.available.size();
+    }
+
+    @Override
+    public List<Book> find(String query) {
+        catalogLock.readLock().lock();
+        try {
+            return catalog.find(query);
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Book> find(String query, int offset, int limit) {
+        catalogLock.readLock().lock();
+        try {
+            return catalog.find(query, offset, limit);
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<String> complete(String prefix, int k) {
+        catalogLock.readLock().lock();
+        try {
+            return catalog.complete(prefix, k);
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void lose(BookCopy copy) {
+        final CopyState state = stateOf(copy);
+        if (state == null) {
+            return;
+        }
+        final Holding holding = state.holding;
+        synchronized (holding) {
+            // Remove the copy under its lock, so a checkout or checkin holding the lock never
+            // sees its state half lost, and from holding.copies under the same hold of the
+            // holding's lock, so allCopies never sees it half lost either
+            synchronized (state) {
+                if (state.status == LOST || !stateById.remove(copy.getId(), state)) {
+                    return;
+                }
+                state.status = LOST;
+                holding.available.remove(copy);
+                holding.copies.remove(copy);
+                checkRep(state);
+            }
+            if (holding.copies.isEmpty()) {
+                // That was the last copy; uncatalogue the book before a later buy can
+                // make a new holding for it
+                holding.removed = true;
+                catalogLock.writeLock().lock();
+                try {
+                    catalog.remove(holding.book);
+                } finally {
+                    catalogLock.writeLock().unlock();
+                }
+                bookToHolding.remove(holding.book, holding);
+            }
+        }
+    }
+
+}
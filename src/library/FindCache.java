@@ -0,0 +1,208 @@
+package library;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * FindCache is a mutable, bounded, least-recently-used cache of the results of find over a
+ * catalogue, invalidated precisely by the changes to the catalogue.  It is not safe for
+ * concurrent use.
+ *
+ * The owner of the catalogue calls changed(book) whenever a book is added to or removed from
+ * it.  Each change advances the cache's generation and is kept in a bounded log.  A cached
+ * result records the generation it was computed at; when it is next looked up, it is still
+ * valid iff no book changed since then matches its query, in which case it is brought up to
+ * the current generation.  So changes that cannot affect a query never evict it, and a change
+ * costs O(1) however many results are cached.
+ */
+class FindCache {
+
+    // number of recent changes remembered; a result older than that is treated as stale
+    private static final int LOG_CAPACITY = 1024;
+    // results with more books than this are not cached, so that memory stays bounded
+    static final int MAX_RESULT_SIZE = 1000;
+
+    /*
+     * A query, or a page of the results of a query.
+     */
+    private static class Key {
+        private final String query;
+        private final int offset;
+        private final int limit; // -1 for all results
+
+        Key(String query, int offset, int limit) {
+            this.query = query;
+            this.offset = offset;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean equals(Object that) {
+            if (!(that instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) that;
+            return query.equals(key.query) && offset == key.offset && limit == key.limit;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(query, offset, limit);
+        }
+    }
+
+    /*
+     * The cached results of a key, valid as of generation.
+     */
+    private static class Entry {
+        private final List<Book> books;
+        private long generation;
+
+        Entry(List<Book> books, long generation) {
+            this.books = books;
+            this.generation = generation;
+        }
+    }
+
+    // rep
+    private final Map<Key, Entry> entries;
+    private final Book[] changes;
+    private long generation;
+    private long hits;
+    private long misses;
+
+    // rep invariant
+    //    entries.size() <= capacity, and every entry holds at most MAX_RESULT_SIZE books
+    //    every entry's generation is <= generation
+    //    changes.length == LOG_CAPACITY; for max(0, generation - LOG_CAPACITY) <= g < generation,
+    //      changes[g % LOG_CAPACITY] is the book of the g-th change
+    //
+    // abstraction function
+    //    represents a cache mapping each key of entries to its books, as long as they are
+    //      still valid, with hits and misses counted in hits and misses
+    //
+    // safety from rep exposure argument
+    //    all fields are private; get returns a fresh list of immutable Books, and put copies
+    //    the list it is given
+
+    /**
+     * Make an empty cache.
+     * @param capacity maximum number of results to cache, positive
+     */
+    public FindCache(final int capacity) {
+        entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+        changes = new Book[LOG_CAPACITY];
+        generation = 0;
+        hits = 0;
+        misses = 0;
+    }
+
+    /**
+     * Look up cached results.
+     * @param query search string
+     * @param offset page offset, or 0 for all results
+     * @param limit page size, or -1 for all results
+     * @return a fresh copy of the cached results of find(query, offset, limit), or of
+     *         find(query) if limit is -1; null if they are not cached or are no longer valid
+     */
+    public List<Book> get(String query, int offset, int limit) {
+        final Key key = new Key(query, offset, limit);
+        final Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (!isValid(entry, query)) {
+            entries.remove(key);
+            misses++;
+            return null;
+        }
+        entry.generation = generation;
+        hits++;
+        return new ArrayList<Book>(entry.books);
+    }
+
+    /**
+     * Cache results, unless there are more than MAX_RESULT_SIZE of them.
+     * @param query search string
+     * @param offset page offset, or 0 for all results
+     * @param limit page size, or -1 for all results
+     * @param books results of find(query, offset, limit), or of find(query) if limit is -1,
+     *        against the catalogue as of now
+     */
+    public void put(String query, int offset, int limit, List<Book> books) {
+        if (books.size() > MAX_RESULT_SIZE) {
+            return;
+        }
+        entries.put(new Key(query, offset, limit), new Entry(new ArrayList<Book>(books), generation));
+    }
+
+    /**
+     * Forget every cached result.  The generation and the hit and miss counts are kept.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Record that a book was added to or removed from the catalogue.
+     * @param book the book added or removed
+     */
+    public void changed(Book book) {
+        changes[(int) (generation % LOG_CAPACITY)] = book;
+        generation++;
+    }
+
+    /**
+     * @return number of changes recorded by changed()
+     */
+    public long generation() {
+        return generation;
+    }
+
+    /**
+     * @return number of calls to get that found valid results
+     */
+    public long hits() {
+        return hits;
+    }
+
+    /**
+     * @return number of calls to get that did not
+     */
+    public long misses() {
+        return misses;
+    }
+
+    /*
+     * @return true iff no book changed since entry was valid matches query
+     */
+    private boolean isValid(Entry entry, String query) {
+        if (generation - entry.generation > LOG_CAPACITY) {
+            // the changes since then have been forgotten
+            return false;
+        }
+        if (entry.generation == generation) {
+            return true;
+        }
+        final Set<String> queryTerms = InvertedIndex.terms(query);
+        for (long g = entry.generation; g < generation; g++) {
+            if (FindResults.matches(changes[(int) (g % LOG_CAPACITY)], query, queryTerms)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
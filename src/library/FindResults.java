@@ -0,0 +1,252 @@
+package library;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * FindResults is a mutable builder for the result of Library.find(): it collects matching books
+ * with a score for how well each matches the query, and orders them in one sort by decreasing
+ * score, then by title and author list, then by decreasing publication year.
+ *
+ * Since every book with the same title and authors gets the same score for a query, books that
+ * differ only in year end up next to each other, newest first, as the Library spec requires.
+ */
+class FindResults {
+
+    // A score is the number of distinct query terms a book contains, plus a flag for each way
+    // its title or an author matches the whole query.  Each flag outweighs any number of
+    // matching terms, and the flags rank each other in the order
+    // exact > contains the query > contained in the query.
+    public static final int EXACT_MATCH = 4 << 16;
+    public static final int CONTAINS_QUERY = 2 << 16;
+    public static final int CONTAINED_IN_QUERY = 1 << 16;
+    private static final int TERM_COUNT_MASK = (1 << 16) - 1;
+
+    /*
+     * A matching book and its score so far.
+     */
+    static class Match {
+        private final Book book;
+        private int score;
+
+        Match(Book book, int score) {
+            this.book = book;
+            this.score = score;
+        }
+
+        Book book() {
+            return book;
+        }
+
+        int score() {
+            return score;
+        }
+    }
+
+    // best match first
+    static final Comparator<Match> RANKING = new Comparator<Match>() {
+        @Override
+        public int compare(Match match1, Match match2) {
+            return FindResults.compare(match1.book, match1.score, match2.book, match2.score);
+        }
+    };
+
+    // rep
+    private final Map<Book, Match> matches;
+
+    // rep invariant
+    //    matches.get(book).book equals book
+    //
+    // abstraction function
+    //    represents the set of books matches.keySet(), where book has score matches.get(book).score
+    //
+    // safety from rep exposure argument
+    //    matches is private and never returned; results are returned in fresh lists of
+    //    immutable Books
+
+    /**
+     * Make an empty result.
+     */
+    public FindResults() {
+        matches = new HashMap<Book, Match>();
+    }
+
+    /**
+     * Compute how a title or author name matches a query.
+     * @param key title or author name
+     * @param query search string
+     * @return EXACT_MATCH if key equals query, else CONTAINS_QUERY if key contains query,
+     *         else CONTAINED_IN_QUERY if query contains key, else 0
+     */
+    public static int keyMatch(String key, String query) {
+        if (key.equals(query)) {
+            return EXACT_MATCH;
+        } else if (key.contains(query)) {
+            return CONTAINS_QUERY;
+        } else if (query.contains(key)) {
+            return CONTAINED_IN_QUERY;
+        }
+        return 0;
+    }
+
+    /**
+     * Compute how a book's title and authors match a query.
+     * @param book book to match
+     * @param query search string
+     * @return the union of keyMatch(key, query) over book's title and authors
+     */
+    public static int keyFlags(Book book, String query) {
+        int flags = keyMatch(book.getTitle(), query);
+        for (String author: book.getAuthors()) {
+            flags |= keyMatch(author, query);
+        }
+        return flags;
+    }
+
+    /**
+     * Combine the ways a book matches a query into its score.
+     * @param flags keyFlags(book, query)
+     * @param termCount number of distinct terms of the query that book contains
+     * @return score of book for query; 0 iff book does not match
+     */
+    public static int score(int flags, int termCount) {
+        return flags + Math.min(termCount, TERM_COUNT_MASK);
+    }
+
+    /**
+     * Bound the score of a book from its best flag.
+     * @param bestFlag highest flag of the book, or 0 if it matches only through terms
+     * @param possibleFlags flags that some book may have for the query
+     * @param termCount number of distinct terms of the query, nonnegative
+     * @return the highest score a book with that best flag can have
+     */
+    public static int maxScore(int bestFlag, int possibleFlags, int termCount) {
+        final int lowerFlags = possibleFlags & (bestFlag - 1) & ~TERM_COUNT_MASK;
+        return bestFlag == 0 ? score(0, termCount) : score(bestFlag | lowerFlags, termCount);
+    }
+
+    /**
+     * Check whether a book matches a query at all, without allocating.
+     * @param book book to check
+     * @param query search string
+     * @param queryTerms InvertedIndex.terms(query)
+     * @return true iff book's score for query is nonzero
+     */
+    public static boolean matches(Book book, String query, Set<String> queryTerms) {
+        if (keyFlags(book, query) != 0) {
+            return true;
+        }
+        for (String term: queryTerms) {
+            if (InvertedIndex.hasTerm(book.getTitle(), term)) {
+                return true;
+            }
+            for (String author: book.getAuthors()) {
+                if (InvertedIndex.hasTerm(author, term)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compare two scored books as RANKING compares their matches, without making them.
+     * @return negative if book1 ranks first, positive if book2 does, 0 if they are equal
+     */
+    public static int compare(Book book1, int score1, Book book2, int score2) {
+        final int byScore = Integer.compare(score2, score1);
+        if (byScore != 0) {
+            return byScore;
+        }
+        final int byTitle = book1.getTitle().compareTo(book2.getTitle());
+        if (byTitle != 0) {
+            return byTitle;
+        }
+        final int byAuthors = compareAuthors(book1.getAuthors(), book2.getAuthors());
+        if (byAuthors != 0) {
+            return byAuthors;
+        }
+        return Integer.compare(book2.getYear(), book1.getYear());
+    }
+
+    /**
+     * Add a book whose title or an author matches the whole query.
+     * @param book matching book
+     * @param flag one of EXACT_MATCH, CONTAINS_QUERY, CONTAINED_IN_QUERY
+     */
+    public void addKeyMatch(Book book, int flag) {
+        match(book).score |= flag;
+    }
+
+    /**
+     * Add a book containing one more of the distinct terms of the query.
+     * @param book matching book
+     */
+    public void addTermMatch(Book book) {
+        final Match match = match(book);
+        if ((match.score & TERM_COUNT_MASK) < TERM_COUNT_MASK) {
+            match.score++;
+        }
+    }
+
+    /**
+     * @return every book in this result, best match first
+     */
+    public List<Book> toList() {
+        return books(ranked());
+    }
+
+    /**
+     * @return the matches of every book in this result, best match first, ordered by RANKING
+     */
+    public List<Match> ranked() {
+        final List<Match> ranked = new ArrayList<Match>(matches.values());
+        Collections.sort(ranked, RANKING);
+        return ranked;
+    }
+
+    /*
+     * @return the match for book, added with score 0 if not yet present
+     */
+    private Match match(Book book) {
+        Match match = matches.get(book);
+        if (match == null) {
+            match = new Match(book, 0);
+            matches.put(book, match);
+        }
+        return match;
+    }
+
+    /**
+     * @param ranked matches
+     * @return the books of ranked, in the same order
+     */
+    public static List<Book> books(Collection<Match> ranked) {
+        final List<Book> books = new ArrayList<Book>(ranked.size());
+        for (Match match: ranked) {
+            books.add(match.book);
+        }
+        return books;
+    }
+
+    /*
+     * Compare two author lists lexicographically.
+     */
+    private static int compareAuthors(List<String> authors1, List<String> authors2) {
+        final int length = Math.min(authors1.size(), authors2.size());
+        for (int i = 0; i < length; i++) {
+            final int byAuthor = authors1.get(i).compareTo(authors2.get(i));
+            if (byAuthor != 0) {
+                return byAuthor;
+            }
+        }
+        return Integer.compare(authors1.size(), authors2.size());
+    }
+
+}
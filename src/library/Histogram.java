@@ -0,0 +1,187 @@
+package library;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram is a mutable, thread-safe distribution of nonnegative long values, such as
+ * latencies in nanoseconds or result sizes, with a fixed relative precision in the style of
+ * an HDR histogram: a recorded value is counted in a bucket whose width is at most 1/8 of its
+ * lower bound, so percentiles are accurate to within 12.5% across the whole range of long.
+ *
+ * Recording a value takes constant time and allocates nothing.
+ */
+public class Histogram {
+
+    // each power of two is split into 2^SUB_BITS buckets
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = bucket(Long.MAX_VALUE) + 1;
+
+    // rep
+    private final AtomicLongArray counts;
+    private final LongAdder sum;
+    private final AtomicLong max;
+
+    // rep invariant
+    //    counts.length() == BUCKETS, and every count is nonnegative
+    //    sum is the sum of the recorded values, and max the largest (0 if none)
+    //
+    // abstraction function
+    //    represents the multiset of values recorded, where counts[i] values fell in
+    //      [lowerBound(i), lowerBound(i+1)-1]
+    //
+    // safety from rep exposure argument
+    //    all fields are private and final; snapshot() copies the counts
+    //
+    // thread safety argument
+    //    all fields are thread-safe atomic types, and record updates each independently; a
+    //    snapshot taken while values are being recorded may count a value in some fields and
+    //    not others, which only skews it by the values recorded during the snapshot
+
+    /**
+     * Make an empty histogram.
+     */
+    public Histogram() {
+        counts = new AtomicLongArray(BUCKETS);
+        sum = new LongAdder();
+        max = new AtomicLong();
+    }
+
+    /**
+     * Record a value.
+     * @param value value to record; negative values are recorded as 0
+     */
+    public void record(long value) {
+        final long v = Math.max(0, value);
+        counts.incrementAndGet(bucket(v));
+        sum.add(v);
+        if (v > max.get()) {
+            max.accumulateAndGet(v, Math::max);
+        }
+    }
+
+    /**
+     * @return an immutable copy of the values recorded so far
+     */
+    public Snapshot snapshot() {
+        final long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, sum.sum(), max.get());
+    }
+
+    /*
+     * @return index of the bucket holding nonnegative value v
+     */
+    private static int bucket(long v) {
+        if (v < SUB_BUCKETS) {
+            return (int) v;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(v);
+        final int sub = (int) (v >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /*
+     * @return the smallest value held by bucket index, for 0 <= index < BUCKETS
+     */
+    private static long lowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+        return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BITS);
+    }
+
+    /*
+     * @return the largest value held by bucket index, for 0 <= index < BUCKETS
+     */
+    private static long upperBound(int index) {
+        return index + 1 == BUCKETS ? Long.MAX_VALUE : lowerBound(index + 1) - 1;
+    }
+
+    /**
+     * Snapshot is an immutable copy of the values recorded in a Histogram.
+     */
+    public static final class Snapshot {
+
+        // rep
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        // rep invariant
+        //    counts.length == BUCKETS, every count is nonnegative, and count is their sum
+        //    max is 0 if count is 0, and otherwise lies in the highest nonempty bucket
+        //
+        // abstraction function
+        //    represents the multiset of values that were recorded, as in Histogram
+        //
+        // safety from rep exposure argument
+        //    counts is private, made by Histogram.snapshot, and never returned
+
+        private Snapshot(long[] counts, long sum, long max) {
+            long count = 0;
+            for (long c: counts) {
+                count += c;
+            }
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * @return number of values recorded
+         */
+        public long count() {
+            return count;
+        }
+
+        /**
+         * @return largest value recorded, or 0 if none was
+         */
+        public long max() {
+            return max;
+        }
+
+        /**
+         * @return mean of the values recorded, or 0 if none was
+         */
+        public double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * @param percentile percentage, 0 <= percentile <= 100
+         * @return a value v such that at least percentile% of the values recorded are <= v,
+         *         within the precision of the histogram and never more than max(); 0 if no
+         *         value was recorded
+         */
+        public long valueAtPercentile(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("percentile out of range: " + percentile);
+            }
+            final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + " mean=" + Math.round(mean()) + " p50=" + valueAtPercentile(50)
+                    + " p99=" + valueAtPercentile(99) + " max=" + max;
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+package library;
+
+import java.util.Arrays;
+
+/**
+ * IdSet is a mutable set of copy ids with O(1) add, remove, contains, and removal of an
+ * arbitrary member, and iteration by index.
+ *
+ * Instead of a hash table, the position of each member within the set is kept in an array
+ * indexed by id, which is passed to each operation and may be shared by many IdSets as long
+ * as each id is a member of at most one of them.  Entries of that array for ids that are not
+ * members may hold anything.
+ */
+class IdSet {
+
+    // rep
+    private int[] ids;
+    private int size;
+
+    // rep invariant
+    //    size <= ids.length
+    //    ids[0..size-1] are distinct and nonnegative
+    //    for 0 <= i < size: positions[ids[i]] == i, for the positions array of this set
+    //
+    // abstraction function
+    //    represents the set of ids ids[0..size-1]
+    //
+    // safety from rep exposure argument
+    //    ids is private and never returned; members are returned as ints
+
+    /**
+     * Make an empty set.
+     */
+    public IdSet() {
+        ids = new int[1];
+        size = 0;
+    }
+
+    /**
+     * @return number of ids in this set
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true iff this set has no ids
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Get a member by index, to iterate over the set.  Indexes change when the set is mutated.
+     * @param index index of the member, 0 <= index < size()
+     * @return the member at index
+     */
+    public int get(int index) {
+        assert(index < size);
+        return ids[index];
+    }
+
+    /**
+     * @param id nonnegative id, less than positions.length
+     * @param positions the positions array of this set
+     * @return true iff id is in this set
+     */
+    public boolean contains(int id, int[] positions) {
+        final int position = positions[id];
+        return position >= 0 && position < size && ids[position] == id;
+    }
+
+    /**
+     * Add an id to this set.
+     * @param id nonnegative id, less than positions.length, not a member of this set or any
+     *        other set sharing positions
+     * @param positions the positions array of this set
+     */
+    public void add(int id, int[] positions) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, 2 * size);
+        }
+        ids[size] = id;
+        positions[id] = size;
+        size++;
+    }
+
+    /**
+     * Remove an id from this set.
+     * @param id member of this set
+     * @param positions the positions array of this set
+     */
+    public void remove(int id, int[] positions) {
+        assert(contains(id, positions));
+        // move the last member into the hole
+        final int position = positions[id];
+        final int last = ids[--size];
+        ids[position] = last;
+        positions[last] = position;
+    }
+
+    /**
+     * Remove an arbitrary member of this set.
+     * @return the removed id; requires that this set be nonempty
+     */
+    public int removeAny() {
+        assert(size > 0);
+        return ids[--size];
+    }
+
+}
@@ -0,0 +1,348 @@
+package library;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * InstrumentedLibrary is a Library that forwards every operation to another Library and
+ * measures it: how often each operation is called, how long it takes, how many results it
+ * returns, and how often it does nothing (checking out a copy that is not available, checking
+ * in a copy that is not checked out, or checkoutAny finding no available copy).
+ *
+ * The measurements are read with snapshot().  Recording them takes a few atomic increments per
+ * call and allocates nothing, so an InstrumentedLibrary may wrap a library on the hot path.
+ * It is thread-safe if the wrapped library is; detecting a no-op takes an extra isAvailable
+ * call, so with concurrent callers a checkout or checkin racing another on the same copy may
+ * be misclassified.
+ */
+public class InstrumentedLibrary implements Library {
+
+    /**
+     * An operation of Library.
+     */
+    public static enum Operation {
+        BUY, BUY_ALL, CHECKOUT, CHECKOUT_ALL, CHECKIN, CHECKIN_ALL, CHECKOUT_ANY, GET_COPY,
+        IS_AVAILABLE, ALL_COPIES, AVAILABLE_COPIES, ALL_COPIES_VIEW, AVAILABLE_COPIES_VIEW,
+        AVAILABLE_COUNT, FIND, FIND_PAGE, FIND_STREAM, COMPLETE, LOSE
+    }
+
+    /*
+     * The measurements of one operation.
+     */
+    private static class Recorder {
+        private final LongAdder noOps = new LongAdder();
+        private final Histogram latencyNanos = new Histogram();
+        private final Histogram resultSizes = new Histogram();
+    }
+
+    // rep
+    private final Library library;
+    private final Map<Operation, Recorder> recorders;
+
+    // rep invariant
+    //    library != null
+    //    recorders has a Recorder for every Operation, and is never mutated after construction
+    //
+    // abstraction function
+    //    represents the library, together with the measurements of the operations called on
+    //      it through this object, recorded in recorders
+    //
+    // safety from rep exposure argument
+    //    the wrapped library is supplied by the client, who may keep using it directly; such
+    //    calls are simply not measured
+    //    recorders is private and never returned; snapshot() returns immutable Stats
+    //
+    // thread safety argument
+    //    recorders is not mutated after construction, so reading it needs no lock, and
+    //    Histogram and LongAdder are thread-safe
+
+    /**
+     * Make a library that measures the operations of another.
+     * @param library library to forward operations to
+     */
+    public InstrumentedLibrary(Library library) {
+        this.library = library;
+        this.recorders = new EnumMap<Operation, Recorder>(Operation.class);
+        for (Operation operation: Operation.values()) {
+            recorders.put(operation, new Recorder());
+        }
+        checkRep();
+    }
+
+    // assert the rep invariant
+    private void checkRep() {
+        assert(library != null);
+        assert(recorders.size() == Operation.values().length);
+    }
+
+    /*
+     * Record one call of operation that started at start (from System.nanoTime()).
+     */
+    private void record(Operation operation, long start) {
+        recorders.get(operation).latencyNanos.record(System.nanoTime() - start);
+    }
+
+    /*
+     * Record one call of operation that started at start and returned size results.
+     */
+    private void record(Operation operation, long start, int size) {
+        final Recorder recorder = recorders.get(operation);
+        recorder.latencyNanos.record(System.nanoTime() - start);
+        recorder.resultSizes.record(size);
+    }
+
+    /*
+     * Record that a call of operation did nothing.
+     */
+    private void recordNoOp(Operation operation) {
+        recorders.get(operation).noOps.increment();
+    }
+
+    /**
+     * The measurements of one operation at some instant.  Stats is immutable.
+     */
+    public static final class Stats {
+
+        // rep
+        private final long noOps;
+        private final Histogram.Snapshot latencyNanos;
+        private final Histogram.Snapshot resultSizes;
+
+        // rep invariant
+        //    0 <= noOps, and latencyNanos, resultSizes != null
+        //
+        // abstraction function
+        //    represents the calls of an operation, whose latencies are latencyNanos and whose
+        //      result sizes are resultSizes, noOps of which did nothing
+        //
+        // safety from rep exposure argument
+        //    all fields are immutable
+
+        private Stats(long noOps, Histogram.Snapshot latencyNanos, Histogram.Snapshot resultSizes) {
+            this.noOps = noOps;
+            this.latencyNanos = latencyNanos;
+            this.resultSizes = resultSizes;
+        }
+
+        /**
+         * @return number of calls of the operation
+         */
+        public long calls() {
+            return latencyNanos.count();
+        }
+
+        /**
+         * @return number of calls that did nothing: a checkout of a copy that was not
+         *         available, a checkin of a copy that was not checked out, or a checkoutAny
+         *         that found no available copy; 0 for other operations
+         */
+        public long noOps() {
+            return noOps;
+        }
+
+        /**
+         * @return distribution of the time each call took, in nanoseconds
+         */
+        public Histogram.Snapshot latencyNanos() {
+            return latencyNanos;
+        }
+
+        /**
+         * @return distribution of the number of results returned by each call of find,
+         *         allCopies or availableCopies (and their paged and view forms) or complete;
+         *         empty for other operations
+         */
+        public Histogram.Snapshot resultSizes() {
+            return resultSizes;
+        }
+
+        @Override
+        public String toString() {
+            return "calls=" + calls() + " noOps=" + noOps + " latencyNanos=[" + latencyNanos
+                    + "] resultSizes=[" + resultSizes + "]";
+        }
+    }
+
+    /**
+     * @return the measurements of every operation called so far
+     */
+    public Map<Operation, Stats> snapshot() {
+        final Map<Operation, Stats> stats = new EnumMap<Operation, Stats>(Operation.class);
+        for (Map.Entry<Operation, Recorder> entry: recorders.entrySet()) {
+            final Recorder recorder = entry.getValue();
+            stats.put(entry.getKey(), new Stats(recorder.noOps.sum(),
+                    recorder.latencyNanos.snapshot(), recorder.resultSizes.snapshot()));
+        }
+        return Collections.unmodifiableMap(stats);
+    }
+
+    @Override
+    public BookCopy buy(Book book) {
+        final long start = System.nanoTime();
+        final BookCopy copy = library.buy(book);
+        record(Operation.BUY, start);
+        return copy;
+    }
+
+    @Override
+    public List<BookCopy> buyAll(Collection<Book> books) {
+        final long start = System.nanoTime();
+        final List<BookCopy> copies = library.buyAll(books);
+        record(Operation.BUY_ALL, start);
+        return copies;
+    }
+
+    @Override
+    public void checkout(BookCopy copy) {
+        final long start = System.nanoTime();
+        final boolean wasAvailable = library.isAvailable(copy);
+        library.checkout(copy);
+        record(Operation.CHECKOUT, start);
+        if (!wasAvailable) {
+            recordNoOp(Operation.CHECKOUT);
+        }
+    }
+
+    @Override
+    public void checkin(BookCopy copy) {
+        final long start = System.nanoTime();
+        final boolean wasAvailable = library.isAvailable(copy);
+        library.checkin(copy);
+        final boolean isAvailable = library.isAvailable(copy);
+        record(Operation.CHECKIN, start);
+        if (wasAvailable || !isAvailable) {
+            recordNoOp(Operation.CHECKIN);
+        }
+    }
+
+    @Override
+    public void checkoutAll(Collection<BookCopy> copies) {
+        final long start = System.nanoTime();
+        library.checkoutAll(copies);
+        record(Operation.CHECKOUT_ALL, start);
+    }
+
+    @Override
+    public void checkinAll(Collection<BookCopy> copies) {
+        final long start = System.nanoTime();
+        library.checkinAll(copies);
+        record(Operation.CHECKIN_ALL, start);
+    }
+
+    @Override
+    public BookCopy checkoutAny(Book book) {
+        final long start = System.nanoTime();
+        final BookCopy copy = library.checkoutAny(book);
+        record(Operation.CHECKOUT_ANY, start);
+        if (copy == null) {
+            recordNoOp(Operation.CHECKOUT_ANY);
+        }
+        return copy;
+    }
+
+    @Override
+    public BookCopy getCopy(int id) {
+        final long start = System.nanoTime();
+        final BookCopy copy = library.getCopy(id);
+        record(Operation.GET_COPY, start);
+        return copy;
+    }
+
+    @Override
+    public boolean isAvailable(BookCopy copy) {
+        final long start = System.nanoTime();
+        final boolean available = library.isAvailable(copy);
+        record(Operation.IS_AVAILABLE, start);
+        return available;
+    }
+
+    @Override
+    public Set<BookCopy> allCopies(Book book) {
+        final long start = System.nanoTime();
+        final Set<BookCopy> copies = library.allCopies(book);
+        record(Operation.ALL_COPIES, start, copies.size());
+        return copies;
+    }
+
+    @Override
+    public Set<BookCopy> availableCopies(Book book) {
+        final long start = System.nanoTime();
+        final Set<BookCopy> copies = library.availableCopies(book);
+        record(Operation.AVAILABLE_COPIES, start, copies.size());
+        return copies;
+    }
+
+    @Override
+    public Set<BookCopy> allCopiesView(Book book) {
+        final long start = System.nanoTime();
+        final Set<BookCopy> copies = library.allCopiesView(book);
+        record(Operation.ALL_COPIES_VIEW, start, copies.size());
+        return copies;
+    }
+
+    @Override
+    public Set<BookCopy> availableCopiesView(Book book) {
+        final long start = System.nanoTime();
+        final Set<BookCopy> copies = library.availableCopiesView(book);
+        record(Operation.AVAILABLE_COPIES_VIEW, start, copies.size());
+        return copies;
+    }
+
+    @Override
+    public int availableCount(Book book) {
+        final long start = System.nanoTime();
+        final int count = library.availableCount(book);
+        record(Operation.AVAILABLE_COUNT, start);
+        return count;
+    }
+
+    @Override
+    public List<Book> find(String query) {
+        final long start = System.nanoTime();
+        final List<Book> books = library.find(query);
+        record(Operation.FIND, start, books.size());
+        return books;
+    }
+
+    @Override
+    public List<Book> find(String query, int offset, int limit) {
+        final long start = System.nanoTime();
+        final List<Book> books = library.find(query, offset, limit);
+        record(Operation.FIND_PAGE, start, books.size());
+        return books;
+    }
+
+    /**
+     * Forward findStream.  Its latency is only that of making the stream, since the results
+     * are computed as the caller consumes it.
+     */
+    @Override
+    public Stream<Book> findStream(String query) {
+        final long start = System.nanoTime();
+        final Stream<Book> books = library.findStream(query);
+        record(Operation.FIND_STREAM, start);
+        return books;
+    }
+
+    @Override
+    public List<String> complete(String prefix, int k) {
+        final long start = System.nanoTime();
+        final List<String> completions = library.complete(prefix, k);
+        record(Operation.COMPLETE, start, completions.size());
+        return completions;
+    }
+
+    @Override
+    public void lose(BookCopy copy) {
+        final long start = System.nanoTime();
+        library.lose(copy);
+        record(Operation.LOSE, start);
+    }
+
+}
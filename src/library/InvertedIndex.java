@@ -0,0 +1,135 @@
+package library;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * InvertedIndex is a mutable index from the terms (words) of book titles and author names
+ * to the books that contain them.  Terms are maximal runs of letters and digits, and like
+ * Book itself they are case sensitive.
+ */
+class InvertedIndex {
+
+    // rep
+    private final Map<String, Set<Book>> termToBooks;
+
+    // rep invariant
+    //    every key of termToBooks is a nonempty term, and maps to a nonempty set of books
+    //    every book in termToBooks.get(term) has term among terms(title) or terms(author)
+    //
+    // abstraction function
+    //    represents the set of indexed books, where book is indexed iff it appears in
+    //    termToBooks.get(term) for every term of its title and authors
+    //
+    // safety from rep exposure argument
+    //    termToBooks is private and never returned; postings() wraps the set it returns
+    //    in an unmodifiable view, and Books are immutable
+
+    /**
+     * Make an empty index.
+     */
+    public InvertedIndex() {
+        termToBooks = new HashMap<String, Set<Book>>();
+    }
+
+    /**
+     * Split text into terms.
+     * @param text text to split
+     * @return the distinct terms of text, in order of first appearance
+     */
+    public static Set<String> terms(String text) {
+        final Set<String> terms = new LinkedHashSet<String>();
+        final int length = text.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            final boolean inTerm = i < length && Character.isLetterOrDigit(text.charAt(i));
+            if (inTerm && start < 0) {
+                start = i;
+            } else if (!inTerm && start >= 0) {
+                terms.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Check for a term without splitting text.
+     * @param text text to search
+     * @param term nonempty term
+     * @return true iff terms(text) contains term
+     */
+    public static boolean hasTerm(String text, String term) {
+        for (int i = text.indexOf(term); i >= 0; i = text.indexOf(term, i + 1)) {
+            final int end = i + term.length();
+            if ((i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1)))
+                    && (end == text.length() || !Character.isLetterOrDigit(text.charAt(end)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add a book to the index under every term of its title and authors.
+     * @param book book to add
+     */
+    public void add(Book book) {
+        for (String term: bookTerms(book)) {
+            Set<Book> books = termToBooks.get(term);
+            if (books == null) {
+                books = new HashSet<Book>();
+                termToBooks.put(term, books);
+            }
+            books.add(book);
+        }
+    }
+
+    /**
+     * Remove a book from the index.  Has no effect if book is not indexed.
+     * @param book book to remove
+     */
+    public void remove(Book book) {
+        for (String term: bookTerms(book)) {
+            final Set<Book> books = termToBooks.get(term);
+            if (books != null) {
+                books.remove(book);
+                if (books.isEmpty()) {
+                    termToBooks.remove(term);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param term term to look up
+     * @return unmodifiable view of the indexed books whose title or authors contain term
+     */
+    public Set<Book> postings(String term) {
+        final Set<Book> books = termToBooks.get(term);
+        if (books == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(books);
+    }
+
+    /*
+     * @return the distinct terms of book's title and author names
+     */
+    private static Set<String> bookTerms(Book book) {
+        final List<String> texts = new ArrayList<String>(book.getAuthors());
+        texts.add(book.getTitle());
+        final Set<String> terms = new HashSet<String>();
+        for (String text: texts) {
+            terms.addAll(terms(text));
+        }
+        return terms;
+    }
+
+}
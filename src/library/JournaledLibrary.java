@@ -0,0 +1,578 @@
+package library;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import library.BookCopy.Condition;
+
+/**
+ * JournaledLibrary is a durable BigLibrary: it records every mutation -- buy, checkout,
+ * checkin, lose, and changes of condition made through setCondition -- in an append-only
+ * journal file, and on open replays the journal on top of the last snapshot saved by
+ * checkpoint().
+ *
+ * Mutations return as soon as they are applied in memory and queued for the journal.  The
+ * journal is written and forced to disk in groups, by a background thread every commit
+ * interval, by sync(), and by close(); so a crash loses at most the mutations of the last
+ * interval, and desk latency does not wait for the disk.
+ *
+ * Copies are identified in the journal by their ids, which BigLibrary numbers densely in
+ * order of purchase, so replaying the same journal on the same snapshot always makes the same
+ * copies with the same ids.  Records are idempotent on any later snapshot, so a crash between
+ * saving a snapshot and emptying the journal is harmless.
+ *
+ * All methods are synchronized, so a JournaledLibrary may be shared between threads.
+ */
+public class JournaledLibrary implements Library, AutoCloseable {
+
+    private static final int MAGIC = 0x4C49424A; // "LIBJ"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    // bytes of the journal read at a time on replay
+    private static final int READ_CHUNK_SIZE = 1 << 16;
+
+    // journal record types
+    private static final byte BUY = 1;
+    private static final byte CHECKOUT = 2;
+    private static final byte CHECKIN = 3;
+    private static final byte LOSE = 4;
+    private static final byte CONDITION = 5;
+
+    // rep
+    private final BigLibrary library;
+    private final Path snapshotFile;
+    private final FileChannel journal;
+    private final ByteArrayOutputStream pending;
+    private final DataOutputStream pendingOut;
+    private final ScheduledExecutorService committer;
+    private final Object syncLock;
+    private IOException failure;
+    private boolean closed;
+
+    // rep invariant
+    //    journal is positioned at its end, and replaying it on the snapshot in snapshotFile
+    //      (or an empty library, if there is none) and then applying the records in pending
+    //      gives a library equivalent to library
+    //    failure is null unless writing the journal has failed
+    //
+    // abstraction function
+    //    represents the library represented by library
+    //
+    // safety from rep exposure argument
+    //    all fields are private and never returned; every Library method delegates to library,
+    //    which returns only fresh sets and lists, read-only views, immutable Books, and
+    //    BookCopys shared with clients by design
+    //
+    // thread safety argument
+    //    library, pending and failure are guarded by this; journal writes and snapshot file
+    //      writes are guarded by syncLock, which is always taken before this, never while
+    //      holding it
+    //    checkpoint copies library's state under this, but writes the copy holding only
+    //      syncLock; the mutations made meanwhile stay in pending, so they are not lost when
+    //      the journal is emptied
+    //    a mutation is applied to library and queued in pending under one hold of this, so
+    //      the journal records mutations in the order they were applied
+
+    /*
+     * Make a journaled library over library, appending to journal, which has been replayed.
+     */
+    private JournaledLibrary(BigLibrary library, Path snapshotFile, FileChannel journal,
+            long commitIntervalMillis) {
+        this.library = library;
+        this.snapshotFile = snapshotFile;
+        this.journal = journal;
+        this.pending = new ByteArrayOutputStream();
+        this.pendingOut = new DataOutputStream(pending);
+        this.syncLock = new Object();
+        this.failure = null;
+        this.closed = false;
+
+        this.committer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "JournaledLibrary committer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        committer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sync();
+                } catch (IOException e) {
+                    // remembered in failure, and reported by the next mutation
+                }
+            }
+        }, commitIntervalMillis, commitIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Open a journaled library, recovering its state from a snapshot and a journal.
+     * @param snapshotFile snapshot written by checkpoint(); if it does not exist, recovery
+     *        starts from an empty library
+     * @param journalFile journal written by a JournaledLibrary with the same snapshotFile;
+     *        created if it does not exist.  A partly written record at its end, as left by a
+     *        crash, is discarded; a damaged record anywhere else makes open fail, leaving
+     *        the journal as it is.
+     * @param commitIntervalMillis how often queued mutations are forced to disk, in
+     *        milliseconds; must be positive
+     * @return the recovered library, which appends to journalFile
+     * @throws IOException if the files cannot be read or written, or do not match each other
+     */
+    public static JournaledLibrary open(Path snapshotFile, Path journalFile, long commitIntervalMillis)
+            throws IOException {
+        final BigLibrary library = Files.exists(snapshotFile)
+                ? BigLibrary.load(snapshotFile)
+                : new BigLibrary();
+        final FileChannel journal = FileChannel.open(journalFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final long end = replay(journal, library, journalFile);
+            journal.truncate(end);
+            journal.position(end);
+            if (end == 0) {
+                writeHeader(journal);
+            }
+        } catch (IOException e) {
+            journal.close();
+            throw e;
+        }
+        return new JournaledLibrary(library, snapshotFile, journal, commitIntervalMillis);
+    }
+
+    /*
+     * Apply the records of journal to library, reading the journal a chunk at a time.  Only
+     * the last record may be bad, as a torn write: one that runs past the end of the journal,
+     * or whose checksum fails and that ends the journal.
+     * @return position just past the last complete record, or 0 if journal is empty
+     * @throws IOException if journal is not a journal, has a bad record before its last, or
+     *         does not match library
+     */
+    private static long replay(FileChannel journal, BigLibrary library, Path journalFile)
+            throws IOException {
+        final long size = journal.size();
+        if (size == 0) {
+            return 0;
+        }
+        // in holds the journal from offset onwards, as far as has been read
+        ByteBuffer in = ByteBuffer.allocate(READ_CHUNK_SIZE);
+        in.limit(0);
+        long offset = 0;
+
+        in = read(journal, in, offset, HEADER_SIZE);
+        if (in.remaining() < HEADER_SIZE || in.getInt() != MAGIC || in.getInt() != VERSION) {
+            throw new IOException("not a library journal: " + journalFile);
+        }
+        offset += HEADER_SIZE;
+
+        final CRC32 crc = new CRC32();
+        while (true) {
+            in = read(journal, in, offset, RECORD_HEADER_SIZE);
+            if (in.remaining() < RECORD_HEADER_SIZE) {
+                break;
+            }
+            final int length = in.getInt(in.position());
+            final int checksum = in.getInt(in.position() + 4);
+            if (length <= 0) {
+                throw new IOException("corrupt library journal: " + journalFile);
+            } else if (length > size - offset - RECORD_HEADER_SIZE) {
+                break; // torn write at the end of the journal
+            } else if (length > Integer.MAX_VALUE - RECORD_HEADER_SIZE) {
+                throw new IOException("corrupt library journal: " + journalFile);
+            }
+            in = read(journal, in, offset, RECORD_HEADER_SIZE + length);
+            in.position(in.position() + RECORD_HEADER_SIZE);
+            final ByteBuffer record = in.slice();
+            record.limit(length);
+            crc.reset();
+            crc.update(record.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                if (offset + RECORD_HEADER_SIZE + length == size) {
+                    break; // torn write of the last record
+                }
+                // a damaged record with committed records after it must not be cut off
+                throw new IOException("corrupt library journal: " + journalFile);
+            }
+            try {
+                apply(record, library);
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                throw new IOException("corrupt library journal: " + journalFile, e);
+            }
+            in.position(in.position() + length);
+            offset += RECORD_HEADER_SIZE + length;
+        }
+        return offset;
+    }
+
+    /*
+     * Make count bytes of journal from offset available in in, reading more of the journal
+     * if fewer are, into a bigger buffer if in is too small.
+     * @param in buffer ready to read the journal from offset
+     * @return a buffer ready to read the journal from offset, with at least count bytes
+     *         remaining unless the journal ends first
+     */
+    private static ByteBuffer read(FileChannel journal, ByteBuffer in, long offset, int count)
+            throws IOException {
+        if (in.remaining() >= count) {
+            return in;
+        }
+        final ByteBuffer buffer;
+        if (count > in.capacity()) {
+            buffer = ByteBuffer.allocate(count);
+            buffer.put(in);
+        } else {
+            buffer = in.compact();
+        }
+        while (buffer.hasRemaining() && journal.read(buffer, offset + buffer.position()) >= 0) {
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /*
+     * Apply one journal record to library.  Each record is idempotent once applied, so that
+     * applying it to a snapshot taken after it was written changes nothing.
+     * @throws IOException if the record does not match library
+     */
+    private static void apply(ByteBuffer record, BigLibrary library) throws IOException {
+        final byte type = record.get();
+        final int id = record.getInt();
+        if (type == BUY) {
+            final String title = getString(record);
+            final List<String> authors = new ArrayList<String>();
+            for (int count = record.getInt(); authors.size() < count; ) {
+                authors.add(getString(record));
+            }
+            final int year = record.getInt();
+            if (id < library.nextId()) {
+                return; // bought before the snapshot was saved
+            }
+            if (id != library.nextId() || library.buy(new Book(title, authors, year)).getId() != id) {
+                throw new IOException("library journal does not follow its snapshot: copy " + id);
+            }
+            return;
+        }
+
+        final BookCopy copy = library.getCopy(id);
+        if (copy == null) {
+            return; // lost before the snapshot was saved
+        }
+        switch (type) {
+        case CHECKOUT:
+            library.checkout(copy);
+            break;
+        case CHECKIN:
+            library.checkin(copy);
+            break;
+        case LOSE:
+            library.lose(copy);
+            break;
+        case CONDITION:
+            copy.setCondition(Condition.values()[record.get()]);
+            break;
+        default:
+            throw new IOException("unknown library journal record type " + type);
+        }
+    }
+
+    /*
+     * @return the next String of in, written by putString
+     */
+    private static String getString(ByteBuffer in) {
+        final byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /*
+     * Write the journal header at the start of the empty journal.
+     */
+    private static void writeHeader(FileChannel journal) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining()) {
+            journal.write(header);
+        }
+        journal.force(true);
+    }
+
+    /*
+     * Queue a journal record for copy.  Requires this lock.
+     * @param type record type other than BUY
+     * @param copy copy owned by library
+     */
+    private void log(byte type, BookCopy copy) {
+        final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(payload);
+        try {
+            out.writeByte(type);
+            out.writeInt(copy.getId());
+            if (type == BUY) {
+                final Book book = copy.getBook();
+                putString(out, book.getTitle());
+                out.writeInt(book.getAuthors().size());
+                for (String author: book.getAuthors()) {
+                    putString(out, author);
+                }
+                out.writeInt(book.getYear());
+            } else if (type == CONDITION) {
+                out.writeByte(copy.getCondition().ordinal());
+            }
+
+            final CRC32 crc = new CRC32();
+            crc.update(payload.toByteArray());
+            pendingOut.writeInt(payload.size());
+            pendingOut.writeInt((int) crc.getValue());
+            payload.writeTo(pendingOut);
+        } catch (IOException e) {
+            // in-memory streams do not throw
+            throw new AssertionError(e);
+        }
+    }
+
+    /*
+     * Write s as a length and UTF-8 bytes.
+     */
+    private static void putString(DataOutputStream out, String s) throws IOException {
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /*
+     * Check that mutations may be journaled.  Requires this lock.
+     * @throws UncheckedIOException if writing the journal has failed
+     * @throws IllegalStateException if this library has been closed
+     */
+    private void checkWritable() {
+        if (failure != null) {
+            throw new UncheckedIOException("library journal failed", failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("library is closed");
+        }
+    }
+
+    /*
+     * @return true iff copy is owned by library and not lost
+     */
+    private boolean owns(BookCopy copy) {
+        return library.getCopy(copy.getId()) == copy;
+    }
+
+    /**
+     * Write every mutation made so far to the journal and force it to disk.
+     * @throws IOException if the journal cannot be written; the library then refuses
+     *         further mutations
+     */
+    public void sync() throws IOException {
+        synchronized (syncLock) {
+            final byte[] batch;
+            synchronized (this) {
+                if (failure != null) {
+                    throw failure;
+                }
+                batch = pending.toByteArray();
+                pending.reset();
+            }
+            try {
+                write(batch);
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /*
+     * Append batch to the journal and force it to disk.  Requires syncLock.
+     */
+    private void write(byte[] batch) throws IOException {
+        if (batch.length == 0) {
+            return;
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(batch);
+        while (buffer.hasRemaining()) {
+            journal.write(buffer);
+        }
+        journal.force(false);
+    }
+
+    /**
+     * Save a snapshot of this library and empty the journal, so that the next open replays
+     * only the mutations made after now.  The library's state is copied and then written
+     * without holding it up: mutations made meanwhile wait in memory, and go to the emptied
+     * journal with the next sync.  Other calls to sync() and checkpoint() wait until the
+     * snapshot is written.
+     * @throws IOException if the snapshot or journal cannot be written
+     */
+    public void checkpoint() throws IOException {
+        synchronized (syncLock) {
+            final byte[] batch;
+            final LibrarySnapshot snapshot;
+            synchronized (this) {
+                checkWritable();
+                batch = pending.toByteArray();
+                pending.reset();
+                snapshot = library.snapshot();
+            }
+            try {
+                write(batch);
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                }
+                throw e;
+            }
+            // A crash from here on leaves a journal that is replayed on the old snapshot or,
+            // its records being idempotent, on the new one
+            snapshot.write(snapshotFile);
+            journal.truncate(0);
+            journal.position(0);
+            writeHeader(journal);
+        }
+    }
+
+    /**
+     * Write every mutation to disk and close the journal.  The library can still be read,
+     * but no longer mutated.
+     * @throws IOException if the journal cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        committer.shutdown();
+        synchronized (syncLock) {
+            try {
+                if (!closed) {
+                    sync();
+                }
+            } finally {
+                synchronized (this) {
+                    closed = true;
+                }
+                journal.close();
+            }
+        }
+    }
+
+    /**
+     * Set the condition of a copy of this library, journaling the change.  Conditions changed
+     * with BookCopy.setCondition() directly are not journaled.
+     * @param copy copy whose condition to set
+     * @param condition the latest condition of the copy
+     */
+    public synchronized void setCondition(BookCopy copy, Condition condition) {
+        checkWritable();
+        copy.setCondition(condition);
+        if (owns(copy)) {
+            log(CONDITION, copy);
+        }
+    }
+
+    @Override
+    public synchronized BookCopy buy(Book book) {
+        checkWritable();
+        final BookCopy copy = library.buy(book);
+        log(BUY, copy);
+        return copy;
+    }
+
+    @Override
+    public synchronized void checkout(BookCopy copy) {
+        checkWritable();
+        if (library.isAvailable(copy)) {
+            library.checkout(copy);
+            log(CHECKOUT, copy);
+        }
+    }
+
+    @Override
+    public synchronized BookCopy checkoutAny(Book book) {
+        checkWritable();
+        final BookCopy copy = library.checkoutAny(book);
+        if (copy != null) {
+            log(CHECKOUT, copy);
+        }
+        return copy;
+    }
+
+    @Override
+    public synchronized void checkin(BookCopy copy) {
+        checkWritable();
+        if (owns(copy) && !library.isAvailable(copy)) {
+            library.checkin(copy);
+            log(CHECKIN, copy);
+        }
+    }
+
+    @Override
+    public synchronized BookCopy getCopy(int id) {
+        return library.getCopy(id);
+    }
+
+    @Override
+    public synchronized List<String> complete(String prefix, int k) {
+        return library.complete(prefix, k);
+    }
+
+    @Override
+    public synchronized boolean isAvailable(BookCopy copy) {
+        return library.isAvailable(copy);
+    }
+
+    @Override
+    public synchronized Set<BookCopy> allCopies(Book book) {
+        return library.allCopies(book);
+    }
+
+    @Override
+    public synchronized Set<BookCopy> availableCopies(Book book) {
+        return library.availableCopies(book);
+    }
+
+    @Override
+    public synchronized int availableCount(Book book) {
+        return library.availableCount(book);
+    }
+
+    @Override
+    public synchronized List<Book> find(String query) {
+        return library.find(query);
+    }
+
+    @Override
+    public synchronized List<Book> find(String query, int offset, int limit) {
+        return library.find(query, offset, limit);
+    }
+
+    @Override
+    public synchronized void lose(BookCopy copy) {
+        checkWritable();
+        if (owns(copy)) {
+            library.lose(copy);
+            log(LOSE, copy);
+        }
+    }
+
+}
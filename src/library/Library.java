@@ -1,7 +1,11 @@
 package library;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * Library represents a mutable collection of books.  The library may have multiple copies of the same book.
@@ -17,6 +21,20 @@ public interface Library {
      */
     public BookCopy buy(Book book);
     
+    /**
+     * Buy a copy of each of a collection of books, as if by calling buy() on each in turn.
+     * @param books Books to buy; a book that occurs n times in the collection gets n new copies
+     * @return the new, good-condition copies, which are now available in this library, one per
+     * element of books and in the iteration order of books
+     */
+    public default List<BookCopy> buyAll(Collection<Book> books) {
+        final List<BookCopy> copies = new ArrayList<BookCopy>(books.size());
+        for (Book book: books) {
+            copies.add(buy(book));
+        }
+        return copies;
+    }
+    
     /**
      * Check out a copy of a book.
      * @param copy Copy to check out. Requires that the copy be available in this library.
@@ -29,6 +47,54 @@ public interface Library {
      */
     public void checkin(BookCopy copy);
     
+    /**
+     * Check out copies of books, as if by calling checkout() on each in turn.
+     * @param copies Copies to check out. Requires that each copy be available in this library,
+     * and that no copy occur more than once.
+     */
+    public default void checkoutAll(Collection<BookCopy> copies) {
+        for (BookCopy copy: copies) {
+            checkout(copy);
+        }
+    }
+    
+    /**
+     * Check in copies of books, as if by calling checkin() on each in turn.
+     * @param copies Copies to check in. Requires that each copy be checked out of this library,
+     * and that no copy occur more than once.
+     */
+    public default void checkinAll(Collection<BookCopy> copies) {
+        for (BookCopy copy: copies) {
+            checkin(copy);
+        }
+    }
+    
+    /**
+     * Check out any available copy of a book, as one atomic operation.
+     * @param book Book to check out
+     * @return a copy of the book that was available in this library and is now checked out,
+     * or null if no copy of the book is available
+     */
+    public default BookCopy checkoutAny(Book book) {
+        for (BookCopy copy: availableCopiesView(book)) {
+            checkout(copy);
+            return copy;
+        }
+        return null;
+    }
+    
+    /**
+     * Get a copy of this library by its id.  This is an optional operation, supported by
+     * libraries that number their copies (see BookCopy.getId()).
+     * @param id copy id
+     * @return the copy of this library with that id, or null if no copy has that id or the
+     * copy has been lost
+     * @throws UnsupportedOperationException if this library does not number its copies
+     */
+    public default BookCopy getCopy(int id) {
+        throw new UnsupportedOperationException("copies of this library are not numbered");
+    }
+    
     /**
      * Test whether a book copy is available in this library.
      * @param copy Book copy to test
@@ -50,6 +116,38 @@ public interface Library {
      */
     public Set<BookCopy> availableCopies(Book book);
     
+    /**
+     * Get a read-only view of all the copies of a book, which may share storage with this
+     * library instead of copying it.  Use allCopies() to get a set the caller owns.
+     * @param book Book to find
+     * @return unmodifiable set equal to allCopies(book) at the time of the call.  Its contents
+     * are unspecified once this library is mutated. 
+     */
+    public default Set<BookCopy> allCopiesView(Book book) {
+        return Collections.unmodifiableSet(allCopies(book));
+    }
+    
+    /**
+     * Get a read-only view of the available copies of a book, which may share storage with
+     * this library instead of copying it.  Use availableCopies() to get a set the caller owns.
+     * @param book Book to find
+     * @return unmodifiable set equal to availableCopies(book) at the time of the call.  Its
+     * contents are unspecified once this library is mutated. 
+     */
+    public default Set<BookCopy> availableCopiesView(Book book) {
+        return Collections.unmodifiableSet(availableCopies(book));
+    }
+    
+    /**
+     * Count the available copies of a book.
+     * @param book Book to find
+     * @return number of copies of the book that are available in this library, 
+     * i.e. availableCopies(book).size()
+     */
+    public default int availableCount(Book book) {
+        return availableCopies(book).size();
+    }
+    
     /**
      * Search for books in this library's collection.
      * @param query search string
@@ -65,6 +163,48 @@ public interface Library {
      */
     public List<Book> find(String query);
     
+    /**
+     * Search for one page of books in this library's collection.
+     * @param query search string
+     * @param offset number of results to skip. Must be nonnegative.
+     * @param limit maximum number of results to return. Must be nonnegative.
+     * @return the books of find(query) from index offset (inclusive) to offset + limit
+     * (exclusive), or to the end of find(query) if that comes first.
+     */
+    public default List<Book> find(String query, int offset, int limit) {
+        final List<Book> books = find(query);
+        final int from = Math.min(offset, books.size());
+        final int to = (int) Math.min((long) offset + limit, books.size());
+        return new ArrayList<Book>(books.subList(from, to));
+    }
+    
+    /**
+     * Search for books in this library's collection, lazily.
+     * @param query search string
+     * @return sequential, ordered stream of the books of find(query), in the same order.  An
+     * implementation may compute the results only as the stream is consumed, so that a
+     * consumer that stops early (e.g. with findFirst() or limit()) does not pay for ranking
+     * all of them.  If a book is bought or lost while the stream is being consumed, the
+     * stream may throw ConcurrentModificationException.
+     */
+    public default Stream<Book> findStream(String query) {
+        return find(query).stream();
+    }
+    
+    /**
+     * Suggest completions of a partly typed search string, such as the prefix typed so far
+     * into a search box.  This is an optional operation.
+     * @param prefix beginning of a title or author name; case-sensitive, like find()
+     * @param k maximum number of completions to return, nonnegative
+     * @return the distinct titles and author names of books in this library's collection
+     * that start with prefix, most books first, and titles and names with equally many books
+     * in increasing order; at most k of them
+     * @throws UnsupportedOperationException if this library does not support completion
+     */
+    public default List<String> complete(String prefix, int k) {
+        throw new UnsupportedOperationException("this library does not support completion");
+    }
+    
     /**
      * Declare a copy of a book as lost from the library.  A copy can be declared lost if it is stolen
      * without being checked out, or if a borrower checks it out but never returns it. 
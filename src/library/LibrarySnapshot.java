@@ -0,0 +1,329 @@
+package library;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import library.BookCopy.Condition;
+
+/**
+ * LibrarySnapshot is an immutable image of the copies of a BigLibrary, indexed by copy id, as
+ * written to and read from a snapshot file.
+ *
+ * The file is big-endian and holds, after a magic number and format version:
+ *     the distinct title and author Strings, each as a length and UTF-8 bytes
+ *     the distinct books, each as a title index, author count, author indexes and year
+ *     the copies in id order, each as a status byte (lost, available or checked out in the
+ *       low 2 bits, and a damaged flag) followed, unless lost, by its book index
+ * so each String is stored once however many books share it, and a copy takes 5 bytes.
+ * A file is read whole into a heap buffer, and so must be smaller than 2GB.
+ */
+class LibrarySnapshot {
+
+    private static final int MAGIC = 0x4C494253; // "LIBS"
+    private static final int VERSION = 1;
+
+    // copy status byte: a status in the low bits, and flags
+    private static final int STATUS_MASK = 0x3;
+    private static final int LOST = 0;
+    private static final int AVAILABLE = 1;
+    private static final int CHECKED_OUT = 2;
+    private static final int DAMAGED = 0x4;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // rep
+    private final BookCopy[] copyById;
+    private final BitSet checkedOut;
+    private final int copyCount;
+
+    // rep invariant
+    //    copyCount == copyById.length
+    //    copyById[id] is null or has id id
+    //    checkedOut has bits only for ids of nonnull copies
+    //    copies of equal books share one Book, and books share equal title and author Strings
+    //
+    // abstraction function
+    //    represents the copies copyById[0..copyCount-1], where a null copy is lost and the
+    //      others are checked out if their bit of checkedOut is set and available otherwise
+    //
+    // safety from rep exposure argument
+    //    the array and bitset are either read from a file or copied by copyOf; they are handed
+    //    to the one BigLibrary that loads this snapshot, which takes ownership of them, and no
+    //    other reference to them escapes
+
+    private LibrarySnapshot(BookCopy[] copyById, BitSet checkedOut, int copyCount) {
+        this.copyById = copyById;
+        this.checkedOut = checkedOut;
+        this.copyCount = copyCount;
+    }
+
+    /**
+     * Copy the state of a library, so that it can be written while the library changes.
+     * @param copyById copies by id, with null for lost ids
+     * @param checkedOut ids of the copies that are checked out; the other copies are available
+     * @param copyCount number of ids to copy
+     * @return a snapshot of the first copyCount ids, sharing the copies but not the array or
+     *         bitset
+     */
+    public static LibrarySnapshot copyOf(BookCopy[] copyById, BitSet checkedOut, int copyCount) {
+        return new LibrarySnapshot(Arrays.copyOf(copyById, copyCount), (BitSet) checkedOut.clone(), copyCount);
+    }
+
+    /**
+     * @return copies by id, with null for lost ids; the caller takes ownership of the array
+     */
+    public BookCopy[] copyById() {
+        return copyById;
+    }
+
+    /**
+     * @return the ids of the copies that are checked out; the caller takes ownership of it
+     */
+    public BitSet checkedOut() {
+        return checkedOut;
+    }
+
+    /**
+     * @return number of copy ids used, including lost ones
+     */
+    public int copyCount() {
+        return copyCount;
+    }
+
+    /**
+     * Write this snapshot to a file, replacing file atomically once it is safely on disk.
+     * The condition of each copy is read as it is written.
+     * @param file file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+        write(file, copyById, checkedOut, copyCount);
+    }
+
+    /**
+     * Write a snapshot file, replacing file atomically once the snapshot is safely on disk.
+     * @param file file to write
+     * @param copyById copies by id, with null for lost ids
+     * @param checkedOut ids of the copies that are checked out; the other copies are available
+     * @param copyCount number of ids to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path file, BookCopy[] copyById, BitSet checkedOut, int copyCount)
+            throws IOException {
+        // number the distinct Strings and books
+        final Map<String, Integer> stringIndex = new HashMap<String, Integer>();
+        final List<String> strings = new ArrayList<String>();
+        final Map<Book, Integer> bookIndex = new HashMap<Book, Integer>();
+        final List<Book> books = new ArrayList<Book>();
+        for (int id = 0; id < copyCount; id++) {
+            final BookCopy copy = copyById[id];
+            if (copy != null && !bookIndex.containsKey(copy.getBook())) {
+                final Book book = copy.getBook();
+                bookIndex.put(book, books.size());
+                books.add(book);
+                number(book.getTitle(), stringIndex, strings);
+                for (String author: book.getAuthors()) {
+                    number(author, stringIndex, strings);
+                }
+            }
+        }
+
+        final Path directory = file.toAbsolutePath().getParent();
+        final Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                final Output out = new Output(channel);
+                out.putInt(MAGIC);
+                out.putInt(VERSION);
+
+                out.putInt(strings.size());
+                for (String string: strings) {
+                    out.putBytes(string.getBytes(StandardCharsets.UTF_8));
+                }
+
+                out.putInt(books.size());
+                for (Book book: books) {
+                    out.putInt(stringIndex.get(book.getTitle()));
+                    out.putInt(book.getAuthors().size());
+                    for (String author: book.getAuthors()) {
+                        out.putInt(stringIndex.get(author));
+                    }
+                    out.putInt(book.getYear());
+                }
+
+                out.putInt(copyCount);
+                for (int id = 0; id < copyCount; id++) {
+                    final BookCopy copy = copyById[id];
+                    if (copy == null) {
+                        out.putByte(LOST);
+                    } else {
+                        final int status = checkedOut.get(id) ? CHECKED_OUT : AVAILABLE;
+                        final int damaged = copy.getCondition() == Condition.DAMAGED ? DAMAGED : 0;
+                        out.putByte(status | damaged);
+                        out.putInt(bookIndex.get(copy.getBook()));
+                    }
+                }
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Read a snapshot file.
+     * @param file file written by write()
+     * @return the snapshot in file, whose copies are numbered by their ids in the file,
+     *         share one Book per distinct book, and share equal title and author Strings
+     * @throws IOException if the file cannot be read or is not a well-formed snapshot
+     */
+    public static LibrarySnapshot read(Path file) throws IOException {
+        // read into the heap rather than mapping the file, so that no mapping outlives this
+        // call and keeps the file from being replaced by the next checkpoint on Windows
+        final ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("snapshot too large to read: " + file);
+            }
+            in = ByteBuffer.allocate((int) channel.size());
+            while (in.hasRemaining() && channel.read(in) >= 0) {
+            }
+            in.flip();
+        }
+
+        try {
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new IOException("not a library snapshot: " + file);
+            }
+
+            final String[] strings = new String[count(in)];
+            for (int i = 0; i < strings.length; i++) {
+                final byte[] bytes = new byte[count(in)];
+                in.get(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            final Book[] books = new Book[count(in)];
+            for (int i = 0; i < books.length; i++) {
+                final String title = strings[in.getInt()];
+                final List<String> authors = new ArrayList<String>();
+                for (int authorCount = count(in); authors.size() < authorCount; ) {
+                    authors.add(strings[in.getInt()]);
+                }
+                books[i] = new Book(title, authors, in.getInt());
+            }
+
+            final int copyCount = count(in);
+            final BookCopy[] copyById = new BookCopy[copyCount];
+            final BitSet checkedOut = new BitSet(copyCount);
+            for (int id = 0; id < copyCount; id++) {
+                final byte flags = in.get();
+                final int status = flags & STATUS_MASK;
+                if (status == LOST) {
+                    continue;
+                } else if (status == CHECKED_OUT) {
+                    checkedOut.set(id);
+                } else if (status != AVAILABLE) {
+                    throw new IOException("corrupt library snapshot: status " + status);
+                }
+                copyById[id] = new BookCopy(books[in.getInt()], id);
+                if ((flags & DAMAGED) != 0) {
+                    copyById[id].setCondition(Condition.DAMAGED);
+                }
+            }
+            if (in.hasRemaining()) {
+                throw new IOException("trailing bytes in snapshot: " + file);
+            }
+            return new LibrarySnapshot(copyById, checkedOut, copyCount);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("corrupt library snapshot: " + file, e);
+        }
+    }
+
+    /*
+     * Give string the next number if it has none yet.
+     */
+    private static void number(String string, Map<String, Integer> index, List<String> strings) {
+        if (!index.containsKey(string)) {
+            index.put(string, strings.size());
+            strings.add(string);
+        }
+    }
+
+    /*
+     * @return the next int of in, which must count things that each take at least a byte of in
+     * @throws IOException if it is negative or too large, so corrupt counts fail before they
+     *         allocate huge arrays
+     */
+    private static int count(ByteBuffer in) throws IOException {
+        final int count = in.getInt();
+        if (count < 0 || count > in.remaining()) {
+            throw new IOException("corrupt library snapshot: bad count " + count);
+        }
+        return count;
+    }
+
+    /*
+     * A big-endian output stream to a FileChannel, buffered in a fixed-size ByteBuffer.
+     */
+    private static class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putByte(int b) throws IOException {
+            reserve(1);
+            buffer.put((byte) b);
+        }
+
+        void putInt(int i) throws IOException {
+            reserve(4);
+            buffer.putInt(i);
+        }
+
+        // write the length of bytes, then bytes
+        void putBytes(byte[] bytes) throws IOException {
+            putInt(bytes.length);
+            for (int offset = 0; offset < bytes.length; ) {
+                reserve(1);
+                final int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        // make room for n more bytes in buffer
+        private void reserve(int n) throws IOException {
+            if (buffer.remaining() < n) {
+                flush();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,26 @@
+package library;
+
+/**
+ * RepChecks holds the switch for the full rep invariant checks of the Library implementations.
+ * 
+ * Mutators check only the part of the rep they touch, which takes constant time.  Checks that
+ * scan the whole rep take time linear in the size of the library, so they run only when
+ * assertions are enabled and the JVM is started with -Dlibrary.checkRep=full.
+ */
+class RepChecks {
+
+    /**
+     * Name of the system property that enables full rep invariant checks.
+     */
+    public static final String PROPERTY = "library.checkRep";
+
+    /**
+     * True iff full rep invariant checks are enabled.
+     */
+    public static final boolean FULL = "full".equals(System.getProperty(PROPERTY));
+
+    private RepChecks() {
+        // not instantiable
+    }
+
+}
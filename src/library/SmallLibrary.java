@@ -1,8 +1,12 @@
 package library;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /** 
@@ -37,18 +41,27 @@ public class SmallLibrary implements Library {
         checkRep();
     }
     
-    // assert the rep invariant
+    // assert the rep invariant, scanning the whole rep; only if RepChecks.FULL
     private void checkRep() {
+        if (!RepChecks.FULL) {
+            return;
+        }
         for (BookCopy copy: inLibrary) {
             assert(!checkedOut.contains(copy));
         }
     }
+    
+    // assert the part of the rep invariant that concerns copy, and the rest only if RepChecks.FULL
+    private void checkRep(BookCopy copy) {
+        assert(!(inLibrary.contains(copy) && checkedOut.contains(copy)));
+        checkRep();
+    }
 
     @Override
     public BookCopy buy(Book book) {
         BookCopy copy = new BookCopy(book);
         inLibrary.add(copy);
-        checkRep();
+        checkRep(copy);
         
         return copy;
     }
@@ -58,7 +71,7 @@ public class SmallLibrary implements Library {
         if (isAvailable(copy)) {
             checkedOut.add(copy);
             inLibrary.remove(copy);
-            checkRep();
+            checkRep(copy);
         }
     }
     
@@ -67,7 +80,7 @@ public class SmallLibrary implements Library {
         if (checkedOut.contains(copy)) {
             inLibrary.add(copy);
             checkedOut.remove(copy);
-            checkRep();
+            checkRep(copy);
         }
     }
     
@@ -108,38 +121,72 @@ public class SmallLibrary implements Library {
 
     @Override
     public List<Book> find(String query) {
-        List<Book> books = new ArrayList<Book>();
         if (query.trim().length() == 0) {
-            return books;
+            return new ArrayList<Book>();
         }
         
-        Set<BookCopy> allCopies = new HashSet<BookCopy>();
-        allCopies.addAll(checkedOut);
-        allCopies.addAll(inLibrary);
-        
-        Set<Book> allBooks = new HashSet<Book>();
-        for (BookCopy copy: allCopies) {
-            allBooks.add(copy.getBook());
+        FindResults results = new FindResults();
+        for (Book book: allBooks()) {
+            final int flags = FindResults.keyFlags(book, query);
+            if (flags != 0) {
+                results.addKeyMatch(book, flags);
+            }
         }
         
-        List<String> authors;
-        String title;
-        for (Book book: allBooks) {
-            authors = book.getAuthors();
-            title = book.getTitle();
-            if (title.contains(query) || query.contains(title)) {
-                addBookSortedByDate(book, books);
-                continue;
+        return results.toList();
+    }
+    
+    @Override
+    public List<String> complete(String prefix, int k) {
+        // count the books under each title and author name starting with prefix; a name that
+        // is both counts as whichever has more books, as in BigLibrary
+        final Map<String, Integer> titleCounts = new HashMap<String, Integer>();
+        final Map<String, Integer> authorCounts = new HashMap<String, Integer>();
+        for (Book book: allBooks()) {
+            if (book.getTitle().startsWith(prefix)) {
+                increment(titleCounts, book.getTitle());
             }
-            for (String author: authors) {
-                if (author.contains(query) || query.contains(author)) {
-                    addBookSortedByDate(book, books);
-                    break;
+            for (String author: new HashSet<String>(book.getAuthors())) {
+                if (author.startsWith(prefix)) {
+                    increment(authorCounts, author);
                 }
             }
         }
+        final Map<String, Integer> counts = new HashMap<String, Integer>(titleCounts);
+        for (Map.Entry<String, Integer> entry: authorCounts.entrySet()) {
+            counts.merge(entry.getKey(), entry.getValue(), Math::max);
+        }
         
-        return books;
+        List<String> completions = new ArrayList<String>(counts.keySet());
+        Collections.sort(completions, new Comparator<String>() {
+            @Override
+            public int compare(String key1, String key2) {
+                final int byCount = Integer.compare(counts.get(key2), counts.get(key1));
+                return byCount != 0 ? byCount : key1.compareTo(key2);
+            }
+        });
+        return new ArrayList<String>(completions.subList(0, Math.min(k, completions.size())));
+    }
+    
+    /*
+     * @return the distinct books of the copies in this library
+     */
+    private Set<Book> allBooks() {
+        Set<Book> allBooks = new HashSet<Book>();
+        for (BookCopy copy: inLibrary) {
+            allBooks.add(copy.getBook());
+        }
+        for (BookCopy copy: checkedOut) {
+            allBooks.add(copy.getBook());
+        }
+        return allBooks;
+    }
+    
+    /*
+     * Add 1 to the count of key in counts, where a missing key counts 0.
+     */
+    private static void increment(Map<String, Integer> counts, String key) {
+        counts.merge(key, 1, Integer::sum);
     }
     
     @Override
@@ -152,30 +199,9 @@ public class SmallLibrary implements Library {
             checkedOut.remove(copy);
         }
         
-        checkRep();
+        checkRep(copy);
     }
     
-    /*
-     * Add book to books.
-     * If another book is in books with the same title and author list, make sure the book
-     * with the newest publication date appears first.
-     */
-    private void addBookSortedByDate(final Book book, List<Book> books) {
-        int length = books.size();
-        int index = 0;
-        Book tempBook;
-        for (int i = 0; i < length; i++) {
-            tempBook = books.get(i);
-            if (tempBook.getTitle().equals(book.getTitle()) && tempBook.getAuthors().equals(book.getAuthors()) && book.getYear() > tempBook.getYear()) {
-                break;
-            }
-            
-            index++;
-        }
-        
-        books.add(index, book);
-    }
-
     /* Copyright (c) 2016 MIT 6.005 course staff, all rights reserved.
      * Redistribution of original or derived work requires explicit permission.
      * Don't post any of this code on the web or to a public Github repository.
@@ -0,0 +1,432 @@
+package library;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * SubstringIndex is a mutable set of strings (keys) that can be searched for keys containing a
+ * query string, and for keys contained in a query string, without scanning every key.
+ *
+ * Keys containing a query are found through a posting list of every n-gram of length
+ * GRAM_LENGTH, or for a query shorter than that, by walking the trie of the keys; keys
+ * contained in a query are found by walking the trie from each position of the query.  Both
+ * are maintained incrementally by add and remove.  Shorter n-grams are not indexed: their
+ * posting lists would hold nearly every key, and would take most of the index's memory to
+ * serve only queries of one or two characters.
+ *
+ * Each key also has a weight, and the keys starting with a prefix can be completed by weight:
+ * every trie node keeps the MAX_COMPLETIONS heaviest keys below it, so complete() takes time
+ * proportional to the length of the prefix.  Those lists are updated along a key's path when
+ * it is added, removed or reweighted.  Asking for more than MAX_COMPLETIONS keys walks the
+ * whole subtrie below the prefix instead.
+ */
+class SubstringIndex {
+
+    // length of the n-grams indexed
+    private static final int GRAM_LENGTH = 3;
+    // most completions kept for each trie node
+    static final int MAX_COMPLETIONS = 10;
+
+    // rep
+    private final Map<String, Set<String>> gramToKeys;
+    private final TrieNode root;
+    private int size;
+
+    // rep invariant
+    //    gramToKeys.get(gram) is the nonempty set of keys containing gram, for every
+    //      gram of length GRAM_LENGTH that occurs in some key
+    //    the terminal nodes of the trie under root spell out exactly the keys
+    //    every non-root trie node is terminal or has children
+    //    a node is terminal iff its key is nonnull, and then key is the key it spells out and
+    //      weight >= 1 its weight
+    //    top of each node holds the min(MAX_COMPLETIONS, n) terminal nodes of its subtrie
+    //      (itself included) that come first by decreasing weight then increasing key, in
+    //      that order, where n is the number of terminal nodes in the subtrie
+    //    size is the number of keys
+    //
+    // abstraction function
+    //    represents the set of strings spelled out by the terminal nodes of the trie under root
+    //
+    // safety from rep exposure argument
+    //    all fields are private and never returned; the query methods return fresh sets
+    //    of immutable Strings
+
+    private static final TrieNode[] NO_NODES = new TrieNode[0];
+
+    // heaviest first, then by key
+    private static final Comparator<TrieNode> BY_WEIGHT = new Comparator<TrieNode>() {
+        @Override
+        public int compare(TrieNode node1, TrieNode node2) {
+            final int byWeight = Integer.compare(node2.weight, node1.weight);
+            return byWeight != 0 ? byWeight : node1.key.compareTo(node2.key);
+        }
+    };
+
+    /*
+     * A node of the key trie.  children is sorted by label, so lookup is a binary search.
+     * A node with one child and no key of its own shares its child's top array.
+     */
+    private static class TrieNode {
+        private char[] labels = new char[0];
+        private TrieNode[] children = NO_NODES;
+        private boolean terminal;
+        private String key;
+        private int weight;
+        private TrieNode[] top = NO_NODES;
+
+        TrieNode child(char label) {
+            final int index = Arrays.binarySearch(labels, label);
+            return index >= 0 ? children[index] : null;
+        }
+
+        TrieNode addChild(char label) {
+            int index = Arrays.binarySearch(labels, label);
+            if (index >= 0) {
+                return children[index];
+            }
+            index = -(index + 1);
+            final int length = labels.length;
+            final char[] newLabels = new char[length + 1];
+            final TrieNode[] newChildren = new TrieNode[length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(labels, index, newLabels, index + 1, length - index);
+            System.arraycopy(children, index, newChildren, index + 1, length - index);
+            newLabels[index] = label;
+            newChildren[index] = new TrieNode();
+            labels = newLabels;
+            children = newChildren;
+            return newChildren[index];
+        }
+
+        void removeChild(char label) {
+            final int index = Arrays.binarySearch(labels, label);
+            final int length = labels.length;
+            final char[] newLabels = new char[length - 1];
+            final TrieNode[] newChildren = new TrieNode[length - 1];
+            System.arraycopy(labels, 0, newLabels, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(labels, index + 1, newLabels, index, length - index - 1);
+            System.arraycopy(children, index + 1, newChildren, index, length - index - 1);
+            labels = newLabels;
+            children = newChildren;
+        }
+
+        boolean isLeaf() {
+            return labels.length == 0;
+        }
+    }
+
+    /**
+     * Make an empty index.
+     */
+    public SubstringIndex() {
+        gramToKeys = new HashMap<String, Set<String>>();
+        root = new TrieNode();
+        size = 0;
+    }
+
+    /**
+     * @return number of keys in this index
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Add a key to this index with weight 1.  Has no effect if key is already present.
+     * @param key key to add
+     */
+    public void add(String key) {
+        TrieNode node = root;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.addChild(key.charAt(i));
+        }
+        if (node.terminal) {
+            return;
+        }
+        node.terminal = true;
+        node.key = key;
+        node.weight = 1;
+        updateTop(key);
+        size++;
+
+        for (String gram: grams(key)) {
+            Set<String> keys = gramToKeys.get(gram);
+            if (keys == null) {
+                keys = new HashSet<String>();
+                gramToKeys.put(gram, keys);
+            }
+            keys.add(key);
+        }
+    }
+
+    /**
+     * Remove a key from this index.  Has no effect if key is not present.
+     * @param key key to remove
+     */
+    public void remove(String key) {
+        if (!removeFromTrie(root, key, 0)) {
+            return;
+        }
+        updateTop(key);
+        size--;
+
+        for (String gram: grams(key)) {
+            final Set<String> keys = gramToKeys.get(gram);
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                gramToKeys.remove(gram);
+            }
+        }
+    }
+
+    /**
+     * Find the keys that contain a query.
+     * @param query nonempty string to search for
+     * @return set of keys k in this index such that k.contains(query)
+     */
+    public Set<String> keysContaining(String query) {
+        if (query.length() < GRAM_LENGTH) {
+            return keysContainingShort(query);
+        } else if (query.length() == GRAM_LENGTH) {
+            // the query is itself a gram, so its posting list is the exact answer
+            final Set<String> keys = gramToKeys.get(query);
+            return keys == null ? new HashSet<String>() : new HashSet<String>(keys);
+        }
+
+        // candidates must contain every gram of the query; start from the rarest one
+        Set<String> candidates = null;
+        for (int i = 0; i + GRAM_LENGTH <= query.length(); i++) {
+            final Set<String> keys = gramToKeys.get(query.substring(i, i + GRAM_LENGTH));
+            if (keys == null) {
+                return new HashSet<String>();
+            }
+            if (candidates == null || keys.size() < candidates.size()) {
+                candidates = keys;
+            }
+        }
+
+        final Set<String> matches = new HashSet<String>();
+        for (String key: candidates) {
+            if (key.contains(query)) {
+                matches.add(key);
+            }
+        }
+        return matches;
+    }
+
+    /*
+     * Find the keys containing a query too short to be a gram, by checking every key.  Such a
+     * query is contained in a large share of the keys, so this costs not much more than
+     * returning them.
+     */
+    private Set<String> keysContainingShort(String query) {
+        final Set<String> matches = new HashSet<String>();
+        final Deque<TrieNode> unvisited = new ArrayDeque<TrieNode>();
+        unvisited.push(root);
+        while (!unvisited.isEmpty()) {
+            final TrieNode node = unvisited.pop();
+            if (node.terminal && node.key.contains(query)) {
+                matches.add(node.key);
+            }
+            for (TrieNode child: node.children) {
+                unvisited.push(child);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Find the keys that a query contains.
+     * @param query string to search in
+     * @return set of keys k in this index such that query.contains(k)
+     */
+    public Set<String> keysContainedIn(String query) {
+        final Set<String> matches = new HashSet<String>();
+        final int length = query.length();
+        for (int start = 0; start < length; start++) {
+            TrieNode node = root;
+            for (int end = start; end < length; end++) {
+                node = node.child(query.charAt(end));
+                if (node == null) {
+                    break;
+                }
+                if (node.terminal) {
+                    matches.add(query.substring(start, end + 1));
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Change the weight of a key.  Has no effect if key is not present.
+     * @param key key to reweight
+     * @param weight new weight, positive
+     */
+    public void setWeight(String key, int weight) {
+        final TrieNode node = find(key);
+        if (node == null || !node.terminal || node.weight == weight) {
+            return;
+        }
+        node.weight = weight;
+        updateTop(key);
+    }
+
+    /**
+     * Complete a prefix.
+     * @param prefix prefix of the keys to find
+     * @param k maximum number of keys to return, nonnegative
+     * @return the k keys starting with prefix with the greatest weights, heaviest first and
+     *         keys of equal weight in increasing order; fewer if there are fewer keys starting
+     *         with prefix
+     */
+    public List<String> complete(String prefix, int k) {
+        final TrieNode node = find(prefix);
+        final List<String> keys = new ArrayList<String>();
+        if (node == null) {
+            return keys;
+        }
+        if (k <= node.top.length || node.top.length < MAX_COMPLETIONS) {
+            // top holds the k heaviest keys, or every key below node
+            for (int i = 0; i < k && i < node.top.length; i++) {
+                keys.add(node.top[i].key);
+            }
+            return keys;
+        }
+
+        // keep the k heaviest keys of the subtrie, with the lightest of them at the head
+        final PriorityQueue<TrieNode> best = new PriorityQueue<TrieNode>(2 * MAX_COMPLETIONS,
+                Collections.reverseOrder(BY_WEIGHT));
+        final Deque<TrieNode> unvisited = new ArrayDeque<TrieNode>();
+        unvisited.push(node);
+        while (!unvisited.isEmpty()) {
+            final TrieNode next = unvisited.pop();
+            if (next.terminal) {
+                if (best.size() < k) {
+                    best.add(next);
+                } else if (BY_WEIGHT.compare(next, best.peek()) < 0) {
+                    best.poll();
+                    best.add(next);
+                }
+            }
+            for (TrieNode child: next.children) {
+                unvisited.push(child);
+            }
+        }
+        final List<TrieNode> ranked = new ArrayList<TrieNode>(best);
+        Collections.sort(ranked, BY_WEIGHT);
+        for (TrieNode terminal: ranked) {
+            keys.add(terminal.key);
+        }
+        return keys;
+    }
+
+    /*
+     * @return the node spelling out s, or null if no key starts with s
+     */
+    private TrieNode find(String s) {
+        TrieNode node = root;
+        for (int i = 0; i < s.length() && node != null; i++) {
+            node = node.child(s.charAt(i));
+        }
+        return node;
+    }
+
+    /*
+     * Recompute the top arrays of the nodes on the path spelling out key, as far as it is in
+     * the trie, deepest first.
+     */
+    private void updateTop(String key) {
+        final TrieNode[] path = new TrieNode[key.length() + 1];
+        int depth = 0;
+        path[0] = root;
+        while (depth < key.length()) {
+            final TrieNode child = path[depth].child(key.charAt(depth));
+            if (child == null) {
+                break;
+            }
+            path[++depth] = child;
+        }
+        for (int i = depth; i >= 0; i--) {
+            path[i].top = computeTop(path[i]);
+        }
+    }
+
+    /*
+     * @return the top array of node, computed from its own key and its children's top arrays
+     */
+    private static TrieNode[] computeTop(TrieNode node) {
+        if (!node.terminal && node.children.length == 1) {
+            return node.children[0].top;
+        }
+        final TrieNode[] best = new TrieNode[MAX_COMPLETIONS];
+        int count = 0;
+        if (node.terminal) {
+            best[count++] = node;
+        }
+        for (TrieNode child: node.children) {
+            for (TrieNode candidate: child.top) {
+                if (count == MAX_COMPLETIONS && BY_WEIGHT.compare(candidate, best[count - 1]) >= 0) {
+                    // child.top is sorted, so the rest of it is no better
+                    break;
+                }
+                // insert candidate in order, dropping the last node if best is full
+                int i = Math.min(count, MAX_COMPLETIONS - 1);
+                while (i > 0 && BY_WEIGHT.compare(candidate, best[i - 1]) < 0) {
+                    best[i] = best[i - 1];
+                    i--;
+                }
+                best[i] = candidate;
+                count = Math.min(count + 1, MAX_COMPLETIONS);
+            }
+        }
+        return Arrays.copyOf(best, count);
+    }
+
+    /*
+     * Remove key.substring(depth) from the subtrie under node, pruning nodes left empty.
+     * @return true iff the key was present
+     */
+    private static boolean removeFromTrie(TrieNode node, String key, int depth) {
+        if (depth == key.length()) {
+            final boolean present = node.terminal;
+            node.terminal = false;
+            node.key = null;
+            node.weight = 0;
+            return present;
+        }
+        final char label = key.charAt(depth);
+        final TrieNode child = node.child(label);
+        if (child == null || !removeFromTrie(child, key, depth + 1)) {
+            return false;
+        }
+        if (!child.terminal && child.isLeaf()) {
+            node.removeChild(label);
+        }
+        return true;
+    }
+
+    /*
+     * @return the distinct substrings of key with length GRAM_LENGTH
+     */
+    private static Set<String> grams(String key) {
+        final Set<String> grams = new HashSet<String>();
+        for (int i = 0; i + GRAM_LENGTH <= key.length(); i++) {
+            grams.add(key.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+
+}
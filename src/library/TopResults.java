@@ -0,0 +1,102 @@
+package library;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * TopResults is a mutable, bounded collector of find results: it is offered books with their
+ * complete scores, and keeps only the best few, ranked as in FindResults.  Memory is
+ * proportional to the capacity, and a book that does not make the cut costs no allocation.
+ * The caller must offer each book at most once.
+ */
+class TopResults {
+
+    // rep
+    private final int capacity;
+    private final PriorityQueue<FindResults.Match> best;
+
+    // rep invariant
+    //    best.size() <= capacity
+    //    the books of best are distinct, and the best-ranked of those offered with nonzero score
+    //
+    // abstraction function
+    //    represents the capacity best-ranked books among those offered with nonzero score
+    //
+    // safety from rep exposure argument
+    //    all fields are private and never returned; page() returns a fresh list of
+    //    immutable Books
+
+    /**
+     * Make an empty collector.
+     * @param capacity maximum number of books to keep, nonnegative
+     */
+    public TopResults(int capacity) {
+        this.capacity = capacity;
+        // worst of the kept books at the head
+        this.best = new PriorityQueue<FindResults.Match>(Math.max(1, Math.min(capacity, 1024)),
+                Collections.reverseOrder(FindResults.RANKING));
+    }
+
+    /**
+     * Offer a book.
+     * @param book book to offer, not offered before
+     * @param score complete score of book, as computed by FindResults.score(); 0 if no match
+     */
+    public void offer(Book book, int score) {
+        if (score == 0 || capacity == 0) {
+            return;
+        }
+        if (best.size() < capacity) {
+            best.add(new FindResults.Match(book, score));
+        } else {
+            final FindResults.Match worst = best.peek();
+            if (FindResults.compare(book, score, worst.book(), worst.score()) < 0) {
+                best.poll();
+                best.add(new FindResults.Match(book, score));
+            }
+        }
+    }
+
+    /**
+     * @param maxScore score to compare with
+     * @return true iff capacity books are kept and each has a score greater than maxScore,
+     *         so no book scoring at most maxScore could change the result
+     */
+    public boolean excludes(int maxScore) {
+        return best.size() >= capacity && (capacity == 0 || best.peek().score() > maxScore);
+    }
+
+    /**
+     * @param maxScore score to compare with
+     * @param title title to compare with
+     * @return true iff capacity books are kept and each ranks above every book titled title
+     *         and scoring at most maxScore, so no such book could change the result
+     */
+    public boolean excludes(int maxScore, String title) {
+        if (best.size() < capacity) {
+            return false;
+        } else if (capacity == 0) {
+            return true;
+        }
+        final FindResults.Match worst = best.peek();
+        return worst.score() > maxScore
+                || (worst.score() == maxScore && worst.book().getTitle().compareTo(title) < 0);
+    }
+
+    /**
+     * @param offset number of best-ranked books to skip, nonnegative
+     * @return the kept books after the first offset, best first
+     */
+    public List<Book> page(int offset) {
+        final List<FindResults.Match> ranked = new ArrayList<FindResults.Match>(best);
+        Collections.sort(ranked, FindResults.RANKING);
+        final List<Book> books = new ArrayList<Book>(Math.max(0, ranked.size() - offset));
+        for (int i = offset; i < ranked.size(); i++) {
+            books.add(ranked.get(i).book());
+        }
+        return books;
+    }
+
+}
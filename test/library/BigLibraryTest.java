@@ -1,10 +1,22 @@
 package library;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Test suite for BigLibrary's stronger specs.
@@ -12,7 +24,7 @@ import java.util.Collections;
 public class BigLibraryTest {
     
     /* 
-     * NOTE: use this file only for tests of BigLibrary.find()'s stronger spec.
+     * NOTE: use this file only for tests of BigLibrary's stronger specs.
      * Tests of all other Library operations should be in LibraryTest.java 
      */
 
@@ -20,11 +32,63 @@ public class BigLibraryTest {
      * Testing strategy
      * ==================
      * 
-     * TODO: your testing strategy for BigLibrary.find() should go here.
-     * Make sure you have partitions.
+     * find:
+     *   query is one word of a title, one word of an author, words of both
+     *   query matches 0 terms, 1 term, >1 terms of a book
+     *   books matching more query terms rank ahead of books matching fewer
+     *   exact title or author match ranks ahead of partial matches
+     *   query is a substring of a title/author, query contains a title/author, neither
+     *   substring match ranks ahead of term-only match
+     *   matched book still owned, last copy lost
+     *   >1 matched books with same title/author in decreasing date order
+     * find with offset and limit:
+     *   page ends within exact matches, within substring matches, within term-only matches
+     * buy:
+     *   copies of equal Books share one Book; books share equal titles and author names
+     * totalCopies, totalAvailable, totalCheckedOut:
+     *   empty library; after buy, checkout, checkin, checkoutAny, lose of available and of
+     *   checked-out copies, loaded from a snapshot
+     * findStream:
+     *   results span several pages; consumer stops within the first page; catalogue
+     *   changed while streaming, copies checked out while streaming
+     * find cache:
+     *   repeated query, repeated page; result mutated by the client; checkout and checkin
+     *   between finds; first copy bought and last copy lost of a matching book, of a book
+     *   that does not match, of a book containing the query's terms only within longer words;
+     *   findStream does not use the cache
+     * allCopiesView, availableCopiesView:
+     *   used after buying enough copies to grow the library's arrays
+     * save/load:
+     *   empty library; copies available, checked out, damaged, lost (including every copy of
+     *   a book); non-ASCII titles; file is replaced; file is not a snapshot, is truncated
      */
     
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
     // TODO: put JUnit @Test methods here that you developed from your testing strategy
+    @Test
+    public void testCopiesViewsAfterGrowing() {
+        BigLibrary library = new BigLibrary();
+        Book book = new Book("Emma", Arrays.asList("Jane Austen"), 1815);
+        BookCopy first = library.buy(book);
+        Set<BookCopy> all = library.allCopiesView(book);
+        Set<BookCopy> available = library.availableCopiesView(book);
+        
+        // enough copies to replace every array indexed by id
+        BookCopy last = null;
+        for (int i = 0; i < 1000; i++) {
+            last = library.buy(book);
+        }
+        library.checkout(first);
+        assertTrue(all.contains(first));
+        assertTrue(all.contains(last));
+        assertFalse(available.contains(first));
+        assertTrue(available.contains(last));
+        assertEquals(library.allCopies(book), all);
+        assertEquals(library.availableCopies(book), available);
+    }
+    
     @Test
     public void testExampleTest() {
         // this is just an example test, you should delete it
@@ -32,6 +96,353 @@ public class BigLibraryTest {
         assertEquals(Collections.emptyList(), library.find("This Test Is Just An Example"));
     }
 
+    @Test
+    public void testFindSingleTitleWord() {
+        Library library = new BigLibrary();
+        Book book1 = new Book("The Old Man and the Sea", Arrays.asList("Ernest Hemingway"), 1952);
+        Book book2 = new Book("A Farewell to Arms", Arrays.asList("Ernest Hemingway"), 1929);
+        library.buy(book1);
+        library.buy(book2);
+        
+        assertEquals(Arrays.asList(book1), library.find("Sea"));
+        assertEquals(Collections.emptyList(), library.find("Ocean"));
+    }
+    
+    @Test
+    public void testFindRanksByMatchedTerms() {
+        Library library = new BigLibrary();
+        Book book1 = new Book("The Old Man and the Sea", Arrays.asList("Ernest Hemingway"), 1952);
+        Book book2 = new Book("The Sea Wolf", Arrays.asList("Jack London"), 1904);
+        library.buy(book2);
+        library.buy(book1);
+        
+        assertEquals(Arrays.asList(book1, book2), library.find("Hemingway Sea"));
+        assertEquals(Arrays.asList(book2, book1), library.find("Sea Wolf"));
+    }
+    
+    @Test
+    public void testFindExactMatchFirst() {
+        Library library = new BigLibrary();
+        Book book1 = new Book("London", Arrays.asList("Peter Ackroyd"), 2000);
+        Book book2 = new Book("The Call of the Wild", Arrays.asList("Jack London"), 1903);
+        library.buy(book2);
+        library.buy(book1);
+        
+        assertEquals(Arrays.asList(book1, book2), library.find("London"));
+        assertEquals(Arrays.asList(book2, book1), library.find("Jack London"));
+    }
+    
+    @Test
+    public void testFindSubstringOfTitleAndAuthor() {
+        Library library = new BigLibrary();
+        Book book1 = new Book("The Hobbit", Arrays.asList("J.R.R. Tolkien"), 1937);
+        Book book2 = new Book("Hobson's Choice", Arrays.asList("Harold Brighouse"), 1916);
+        library.buy(book1);
+        library.buy(book2);
+        
+        assertEquals(Arrays.asList(book1), library.find("Hobb"));
+        assertEquals(new HashSet<>(Arrays.asList(book1, book2)), new HashSet<>(library.find("Hob")));
+        assertEquals(Arrays.asList(book1), library.find("Tolk"));
+        assertEquals(Collections.emptyList(), library.find("hob"));
+    }
+    
+    @Test
+    public void testFindQueryContainsTitleOrAuthor() {
+        Library library = new BigLibrary();
+        Book book1 = new Book("Emma", Arrays.asList("Jane Austen"), 1815);
+        Book book2 = new Book("Persuasion", Arrays.asList("Jane Austen"), 1817);
+        library.buy(book1);
+        library.buy(book2);
+        
+        assertEquals(Arrays.asList(book1), library.find("Emmanuel"));
+        assertEquals(Arrays.asList(book1, book2), library.find("Jane Austen's Emma"));
+    }
+    
+    @Test
+    public void testFindSubstringMatchBeforeTermMatch() {
+        Library library = new BigLibrary();
+        Book book1 = new Book("War and Peace", Arrays.asList("Leo Tolstoy"), 1869);
+        Book book2 = new Book("The Art of War", Arrays.asList("Sun Tzu"), 1910);
+        library.buy(book2);
+        library.buy(book1);
+        
+        assertEquals(Arrays.asList(book1, book2), library.find("War and"));
+        assertEquals(Arrays.asList(book2, book1), library.find("Art of War"));
+    }
+    
+    @Test
+    public void testFindAfterLosingLastCopy() {
+        Library library = new BigLibrary();
+        Book book = new Book("White Fang", Arrays.asList("Jack London"), 1906);
+        BookCopy copy1 = library.buy(book);
+        BookCopy copy2 = library.buy(book);
+        
+        library.lose(copy1);
+        assertEquals(Arrays.asList(book), library.find("Fang"));
+        library.lose(copy2);
+        assertEquals(Collections.emptyList(), library.find("Fang"));
+        assertEquals(Collections.emptyList(), library.find("White Fang"));
+        assertEquals(Collections.emptyList(), library.find("Whit"));
+    }
+    
+    @Test
+    public void testFindDateOrder() {
+        Library library = new BigLibrary();
+        Book book1 = new Book("Walden", Arrays.asList("Henry David Thoreau"), 1854);
+        Book book2 = new Book("Walden", Arrays.asList("Henry David Thoreau"), 1995);
+        Book book3 = new Book("Walden", Arrays.asList("Henry David Thoreau"), 1910);
+        library.buy(book1);
+        library.buy(book2);
+        library.buy(book3);
+        
+        assertEquals(Arrays.asList(book2, book3, book1), library.find("Thoreau"));
+    }
+    
+    @Test
+    public void testFindPagesAgreeWithFind() {
+        Library library = new BigLibrary();
+        List<Book> bought = Arrays.asList(
+                new Book("Sea", Arrays.asList("Anonymous"), 1990),
+                new Book("Sea", Arrays.asList("Anonymous"), 2010),
+                new Book("Sea Fever", Arrays.asList("John Masefield"), 1902),
+                new Book("The Sea Wolf", Arrays.asList("Jack London"), 1904),
+                new Book("Se", Arrays.asList("Anonymous"), 1950),
+                new Book("The Cruel Sea", Arrays.asList("Nicholas Monsarrat"), 1951),
+                new Book("Dead Sea Scrolls", Arrays.asList("Sea Scholars"), 1947));
+        for (Book book: bought) {
+            library.buy(book);
+        }
+        
+        for (String query: Arrays.asList("Sea", "Sea Wolf", "The", "Anonymous Se")) {
+            List<Book> books = library.find(query);
+            for (int offset = 0; offset <= books.size(); offset++) {
+                for (int limit = 0; limit <= books.size() - offset; limit++) {
+                    assertEquals(query + " " + offset + " " + limit,
+                            books.subList(offset, offset + limit), library.find(query, offset, limit));
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void testBuySharesBooksAndStrings() {
+        Library library = new BigLibrary();
+        BookCopy copy1 = library.buy(new Book(new String("Emma"), Arrays.asList(new String("Jane Austen")), 1815));
+        BookCopy copy2 = library.buy(new Book(new String("Emma"), Arrays.asList(new String("Jane Austen")), 1815));
+        BookCopy copy3 = library.buy(new Book(new String("Emma"), Arrays.asList(new String("Jane Austen")), 1816));
+        BookCopy copy4 = library.buy(new Book("Persuasion", Arrays.asList("Editor", new String("Jane Austen")), 1817));
+        
+        assertSame(copy1.getBook(), copy2.getBook());
+        assertSame(copy1.getBook().getTitle(), copy3.getBook().getTitle());
+        assertSame(copy1.getBook().getAuthors().get(0), copy3.getBook().getAuthors().get(0));
+        assertSame(copy1.getBook().getAuthors().get(0), copy4.getBook().getAuthors().get(1));
+        assertEquals(new Book("Emma", Arrays.asList("Jane Austen"), 1816), copy3.getBook());
+    }
+    
+    @Test
+    public void testFindStreamPages() {
+        final BigLibrary library = new BigLibrary();
+        for (int i = 0; i < 100; i++) {
+            library.buy(new Book("Volume " + i, Arrays.asList("Anon"), 1900 + i));
+        }
+        
+        assertEquals(library.find("Anon"), library.findStream("Anon").collect(Collectors.toList()));
+        assertEquals(library.find("Anon", 0, 3), library.findStream("Anon").limit(3).collect(Collectors.toList()));
+    }
+    
+    @Test
+    public void testFindStreamConcurrentModification() {
+        final BigLibrary library = new BigLibrary();
+        final Book emma = new Book("Emma", Arrays.asList("Jane Austen"), 1815);
+        final BookCopy copy = library.buy(emma);
+        
+        final Iterator<Book> unchanged = library.findStream("Emma").iterator();
+        library.checkout(copy);
+        library.buy(emma);
+        assertEquals(emma, unchanged.next());
+        
+        final Iterator<Book> changed = library.findStream("Emma").iterator();
+        library.buy(new Book("Dune", Arrays.asList("Frank Herbert"), 1965));
+        try {
+            changed.next();
+            fail("expected ConcurrentModificationException");
+        } catch (ConcurrentModificationException e) {
+            // expected
+        }
+    }
+    
+    @Test
+    public void testFindCacheHits() {
+        final BigLibrary library = new BigLibrary();
+        final Book emma = new Book("Emma", Arrays.asList("Jane Austen"), 1815);
+        final BookCopy copy = library.buy(emma);
+        
+        assertEquals(Arrays.asList(emma), library.find("Austen"));
+        library.find("Austen").clear();
+        library.checkout(copy);
+        library.checkin(copy);
+        assertEquals(Arrays.asList(emma), library.find("Austen"));
+        assertEquals(Arrays.asList(emma), library.find("Austen", 0, 5));
+        assertEquals(Arrays.asList(emma), library.find("Austen", 0, 5));
+        assertEquals(3, library.findCacheHits());
+        assertEquals(2, library.findCacheMisses());
+        
+        // streaming ranks pages without going through the cache
+        assertEquals(Arrays.asList(emma), library.findStream("Austen").collect(Collectors.toList()));
+        assertEquals(3, library.findCacheHits());
+        assertEquals(2, library.findCacheMisses());
+    }
+    
+    @Test
+    public void testFindCacheInvalidation() {
+        final BigLibrary library = new BigLibrary();
+        final Book emma = new Book("Emma", Arrays.asList("Jane Austen"), 1815);
+        final Book persuasion = new Book("Persuasion", Arrays.asList("Jane Austen"), 1817);
+        final Book dune = new Book("Dune", Arrays.asList("Frank Herbert"), 1965);
+        final BookCopy emmaCopy = library.buy(emma);
+        assertEquals(Arrays.asList(emma), library.find("Austen"));
+        
+        // a book that does not match leaves the cached result valid
+        final BookCopy duneCopy = library.buy(dune);
+        library.lose(duneCopy);
+        assertEquals(Arrays.asList(emma), library.find("Austen"));
+        assertEquals(1, library.findCacheHits());
+        
+        // nor does one whose keys contain the query's terms only within longer words
+        final BookCopy alloyCopy = library.buy(new Book("Austenite", Arrays.asList("Janet Mills"), 1990));
+        assertEquals(Arrays.asList(emma), library.find("Jane Austen"));
+        final BookCopy steelCopy = library.buy(new Book("Steels", Arrays.asList("Janet Austenfeld"), 1991));
+        assertEquals(Arrays.asList(emma), library.find("Jane Austen"));
+        assertEquals(2, library.findCacheHits());
+        library.lose(alloyCopy);
+        library.lose(steelCopy);
+        
+        // first copy of a matching book
+        library.buy(persuasion);
+        assertEquals(Arrays.asList(emma, persuasion), library.find("Austen"));
+        
+        // a second copy does not change the catalogue
+        library.buy(persuasion);
+        assertEquals(Arrays.asList(emma, persuasion), library.find("Austen"));
+        assertEquals(3, library.findCacheHits());
+        
+        // last copy of a matching book
+        library.lose(emmaCopy);
+        assertEquals(Arrays.asList(persuasion), library.find("Austen"));
+        assertEquals(Arrays.asList(persuasion), library.find("Aust"));
+        assertEquals(3, library.findCacheHits());
+    }
+    
+    @Test
+    public void testTotals() throws IOException {
+        BigLibrary library = new BigLibrary();
+        assertTotals(0, 0, library);
+        
+        Book emma = new Book("Emma", Arrays.asList("Jane Austen"), 1815);
+        Book dune = new Book("Dune", Arrays.asList("Frank Herbert"), 1965);
+        List<BookCopy> copies = library.buyAll(Arrays.asList(emma, emma, emma, dune, dune));
+        assertTotals(5, 0, library);
+        
+        library.checkout(copies.get(0));
+        library.checkout(copies.get(3));
+        library.checkoutAny(emma);
+        assertTotals(2, 3, library);
+        library.checkin(copies.get(0));
+        assertTotals(3, 2, library);
+        library.lose(copies.get(3));
+        library.lose(copies.get(4));
+        assertTotals(2, 1, library);
+        
+        Path file = folder.getRoot().toPath().resolve("library.snapshot");
+        library.save(file);
+        assertTotals(2, 1, BigLibrary.load(file));
+    }
+    
+    /*
+     * Assert that library has the given numbers of available and checked-out copies.
+     */
+    private static void assertTotals(int available, int checkedOut, BigLibrary library) {
+        assertEquals(available, library.totalAvailable());
+        assertEquals(checkedOut, library.totalCheckedOut());
+        assertEquals(available + checkedOut, library.totalCopies());
+    }
+    
+    @Test
+    public void testSaveLoadEmpty() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("empty.snapshot");
+        new BigLibrary().save(file);
+        
+        BigLibrary loaded = BigLibrary.load(file);
+        assertEquals(Collections.emptyList(), loaded.find("anything"));
+        BookCopy copy = loaded.buy(new Book("Emma", Arrays.asList("Jane Austen"), 1815));
+        assertTrue(loaded.isAvailable(copy));
+    }
+    
+    @Test
+    public void testSaveLoad() throws IOException {
+        BigLibrary library = new BigLibrary();
+        Book emma = new Book("Emma", Arrays.asList("Jane Austen"), 1815);
+        Book persuasion = new Book("Persuasion", Arrays.asList("Jane Austen"), 1817);
+        Book gone = new Book("Lost Illusions", Arrays.asList("Honor\u00e9 de Balzac"), 1843);
+        Book idiot = new Book("\u0418\u0434\u0438\u043e\u0442", Arrays.asList("Fyodor Dostoevsky"), 1869); // The Idiot
+        BookCopy emma1 = library.buy(emma);
+        BookCopy emma2 = library.buy(emma);
+        BookCopy emma3 = library.buy(emma);
+        BookCopy persuasion1 = library.buy(persuasion);
+        library.lose(library.buy(gone));
+        library.buy(idiot);
+        library.checkout(emma2);
+        emma3.setCondition(BookCopy.Condition.DAMAGED);
+        library.lose(emma1);
+        library.checkout(persuasion1);
+        
+        Path file = folder.getRoot().toPath().resolve("library.snapshot");
+        Files.write(file, new byte[] { 1, 2, 3 }); // replaced by save
+        library.save(file);
+        BigLibrary loaded = BigLibrary.load(file);
+        
+        for (Book book: Arrays.asList(emma, persuasion, gone, idiot)) {
+            assertEquals(library.allCopies(book).size(), loaded.allCopies(book).size());
+            assertEquals(library.availableCount(book), loaded.availableCount(book));
+            assertEquals(library.find(book.getTitle()), loaded.find(book.getTitle()));
+        }
+        assertEquals(library.find("Jane Austen"), loaded.find("Jane Austen"));
+        assertEquals(Collections.emptyList(), loaded.find("Lost Illusions"));
+        
+        BookCopy loadedEmma2 = loaded.allCopies(emma).stream().filter(c -> c.getId() == emma2.getId()).findAny().get();
+        BookCopy loadedEmma3 = loaded.availableCopies(emma).iterator().next();
+        assertFalse(loaded.isAvailable(loadedEmma2));
+        assertEquals(BookCopy.Condition.GOOD, loadedEmma2.getCondition());
+        assertEquals(emma3.getId(), loadedEmma3.getId());
+        assertEquals(BookCopy.Condition.DAMAGED, loadedEmma3.getCondition());
+        
+        // loaded copies work like bought ones, and new copies get fresh ids
+        loaded.checkin(loadedEmma2);
+        assertEquals(2, loaded.availableCount(emma));
+        BookCopy emma4 = loaded.buy(emma);
+        assertSame(loadedEmma2.getBook(), emma4.getBook());
+        assertEquals(3, loaded.allCopies(emma).size());
+    }
+    
+    @Test(expected=IOException.class)
+    public void testLoadNotSnapshot() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("notes.txt");
+        Files.write(file, "not a snapshot".getBytes("UTF-8"));
+        BigLibrary.load(file);
+    }
+    
+    @Test(expected=IOException.class)
+    public void testLoadTruncated() throws IOException {
+        BigLibrary library = new BigLibrary();
+        library.buy(new Book("Emma", Arrays.asList("Jane Austen"), 1815));
+        Path file = folder.getRoot().toPath().resolve("library.snapshot");
+        library.save(file);
+        
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 2));
+        BigLibrary.load(file);
+    }
+    
     @Test(expected=AssertionError.class)
     public void testAssertionsEnabled() {
         assert false; // make sure assertions are enabled with VM argument: -ea
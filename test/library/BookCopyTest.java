@@ -33,8 +33,10 @@ public class BookCopyTest {
      * Test that a new BookCopy has condition GOOD
      * Test that setCondition updates book condition
      * Test that nullifying book returned from getBook does not modify book
+     * Test that getBook shares the immutable book instead of copying it
      * Test that modifying condition returned from getCondition does not modify condition
      * Test that two different BookCopy objects with the same book and same condition are not equal
+     * Test that a BookCopy made directly has id NO_ID
      * 
      */
     
@@ -57,6 +59,14 @@ public class BookCopyTest {
         assertNotNull(book);
     }
     
+    @Test
+    public void testGetBookSharesBook() {
+        Book book = new Book("title", Arrays.asList("author"), 1999);
+        BookCopy copy = new BookCopy(book);
+        assertSame(book, copy.getBook());
+        assertSame(copy.getBook(), copy.getBook());
+    }
+    
     @Test
     public void testModifyingReturnedConditionDoesNotModifyCopy() {
         Book book = new Book("title", Arrays.asList("author"), 1999);
@@ -73,6 +83,12 @@ public class BookCopyTest {
         BookCopy copy2 = new BookCopy(book);
         assertNotEquals(copy1, copy2);
     }
+    
+    @Test
+    public void testNewBookCopyHasNoId() {
+        Book book = new Book("title", Arrays.asList("author"), 1999);
+        assertEquals(BookCopy.NO_ID, new BookCopy(book).getId());
+    }
 
 
     /* Copyright (c) 2016 MIT 6.005 course staff, all rights reserved.
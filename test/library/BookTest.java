@@ -1,6 +1,8 @@
 package library;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -34,6 +36,8 @@ public class BookTest {
      * Test Book creation with invalid author
      * Test Book creation with zero year and negative year
      * Try to modify authors list returned from Book#getAuthors
+     * Modify the authors list passed to the constructor
+     * Test equals/hashCode: same value, different title/authors/year, same hash but different value
      */
     
     @Test(expected=AssertionError.class)
@@ -67,6 +71,32 @@ public class BookTest {
         book.getAuthors().add("This should throw an exception");
     }
 
+    @Test
+    public void testConstructorCopiesAuthorList() {
+        List<String> authors = new ArrayList<String>(Arrays.asList("Fred Bloggs"));
+        Book book = new Book("The Book", authors, 1990);
+        authors.add("Joe Bloggs");
+        assertEquals(Arrays.asList("Fred Bloggs"), book.getAuthors());
+        assertSame(book.getAuthors(), book.getAuthors());
+    }
+    
+    @Test
+    public void testEqualsHashCode() {
+        Book book = new Book("The Book", Arrays.asList("Fred Bloggs", "Joe Bloggs"), 1990);
+        Book same = new Book("The Book", Arrays.asList("Fred Bloggs", "Joe Bloggs"), 1990);
+        assertEquals(book, same);
+        assertEquals(book.hashCode(), same.hashCode());
+        assertNotEquals(book, new Book("The Book", Arrays.asList("Joe Bloggs", "Fred Bloggs"), 1990));
+        assertNotEquals(book, new Book("The Book", Arrays.asList("Fred Bloggs", "Joe Bloggs"), 1991));
+        assertNotEquals(book, new Book("The book", Arrays.asList("Fred Bloggs", "Joe Bloggs"), 1990));
+        
+        // "Aa" and "BB" have the same String hash
+        Book aa = new Book("Aa", Arrays.asList("Fred Bloggs"), 1990);
+        Book bb = new Book("BB", Arrays.asList("Fred Bloggs"), 1990);
+        assertEquals(aa.hashCode(), bb.hashCode());
+        assertNotEquals(aa, bb);
+    }
+
     /* Copyright (c) 2016 MIT 6.005 course staff, all rights reserved.
      * Redistribution of original or derived work requires explicit permission.
      * Don't post any of this code on the web or to a public Github repository.
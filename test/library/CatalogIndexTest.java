@@ -0,0 +1,88 @@
+package library;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ * Test suite for CatalogIndex's parallel ranking of broad queries, and its paged find.
+ */
+public class CatalogIndexTest {
+
+    /*
+     * NOTE: the ranking itself is tested through Library.find in LibraryTest.java and
+     * BigLibraryTest.java; this file only checks that ranking in parallel, and ranking one
+     * page, agree with it.
+     */
+
+    /*
+     * Testing strategy
+     * ==================
+     *
+     * find ranked in parallel vs. on the calling thread:
+     *   no candidates; few candidates, many candidates in every partition
+     *   book matching through several terms and keys (duplicate candidates)
+     *   books differing only in year
+     *   exact, containing, contained-in and term-only matches
+     *
+     * find(query, offset, limit) vs. the same slice of find(query):
+     *   page within one tier, spanning tiers, past the end; limit 0, 1, many
+     *   book matching under its title and an author, under two authors, and listing the
+     *   same author twice
+     *   title equal to another book's author
+     *   many books with equal scores, ordered only by title, authors and year
+     */
+
+    private static CatalogIndex makeIndex(int parallelThreshold, int books) {
+        final CatalogIndex index = new CatalogIndex(new ForkJoinPool(4), parallelThreshold);
+        for (int i = 0; i < books; i++) {
+            index.add(new Book("Sea Stories " + (i % 50), Arrays.asList("Author " + (i % 7), "Sea Editor"),
+                    1900 + i / 50));
+        }
+        index.add(new Book("Sea", Arrays.asList("Anon"), 2000));
+        index.add(new Book("Anon", Arrays.asList("Sea"), 2001));
+        return index;
+    }
+
+    @Test
+    public void testParallelAgreesWithSequential() {
+        final CatalogIndex sequential = makeIndex(Integer.MAX_VALUE, 10000);
+        final CatalogIndex parallel = makeIndex(0, 10000);
+        for (String query: Arrays.asList("Sea", "Sea Stories 7", "Author 3 Sea", "Stories", "Anon",
+                "Sea Stories 12 by Author 5", "nothing")) {
+            assertEquals(query, sequential.find(query), parallel.find(query));
+        }
+    }
+
+    @Test
+    public void testPageAgreesWithFind() {
+        final CatalogIndex index = makeIndex(Integer.MAX_VALUE, 2000);
+        index.add(new Book("Sea Sea", Arrays.asList("Sea Editor", "Sea"), 1990));
+        index.add(new Book("Stories", Arrays.asList("Anon", "Anon"), 1991));
+        index.add(new Book("Sea Editor", Arrays.asList("Sea Stories 3"), 1992));
+        for (String query: Arrays.asList("Sea", "Sea Stories 7", "Author 3 Sea", "Stories", "Anon",
+                "Sea Editor", "Stories 4 Sea Editor", "Author", "nothing")) {
+            final List<Book> all = index.find(query);
+            for (int offset: Arrays.asList(0, 1, 7, 49, 50, 51, 1999, all.size(), all.size() + 5)) {
+                for (int limit: Arrays.asList(0, 1, 3, 20, 1000)) {
+                    final List<Book> expected = all.subList(Math.min(offset, all.size()),
+                            Math.min(offset + limit, all.size()));
+                    assertEquals(query + " " + offset + " " + limit, expected, index.find(query, offset, limit));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testParallelSmall() {
+        final CatalogIndex sequential = makeIndex(Integer.MAX_VALUE, 3);
+        final CatalogIndex parallel = makeIndex(0, 3);
+        assertEquals(sequential.find("Sea"), parallel.find("Sea"));
+        assertEquals(0, parallel.find("nothing").size());
+    }
+
+}
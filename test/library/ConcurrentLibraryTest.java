@@ -0,0 +1,355 @@
+package library;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Test suite for ConcurrentLibrary's stronger specs: safety under concurrent use.
+ */
+public class ConcurrentLibraryTest {
+
+    /*
+     * NOTE: use this file only for tests of ConcurrentLibrary's thread safety.
+     * Tests of all other Library operations should be in LibraryTest.java
+     */
+
+    /*
+     * Testing strategy
+     * ==================
+     *
+     * checkout/checkin:
+     *   many threads on the same few copies, while other threads read availability
+     *   after every thread has checked in what it checked out, every copy is available
+     * checkoutAny:
+     *   many threads claiming copies of the same book until none is left; every copy is
+     *   claimed by exactly one thread
+     * buy/lose:
+     *   many threads buying and losing copies of the same books, down to the last copy,
+     *   while other threads find and check out
+     * lose:
+     *   threads losing copies while other threads check the same copies out and in; a lost
+     *   copy stays lost
+     *   threads losing copies while other threads list the copies; once getCopy treats a copy
+     *   as lost, neither allCopies nor allCopiesView returns it
+     * while threads contend: a copy a thread has checked out is neither available nor in
+     *   availableCopies(book) until that thread checks it in or loses it
+     * after threads join: no copy is both available and checked out, i.e.
+     *   availableCopies(book) is exactly the copies c of allCopies(book) with isAvailable(c),
+     *   and find(title) returns book iff the library owns a copy of it
+     */
+
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 20000;
+
+    @Test
+    public void testCheckoutCheckinContention() throws Exception {
+        final Library library = new ConcurrentLibrary();
+        final Book book = new Book("Ulysses", Arrays.asList("James Joyce"), 1922);
+        final List<BookCopy> copies = new ArrayList<BookCopy>();
+        for (int i = 0; i < 4; i++) {
+            copies.add(library.buy(book));
+        }
+        final Set<BookCopy> all = new HashSet<BookCopy>(copies);
+
+        runConcurrently(new Worker() {
+            public void run(int thread, Random random) {
+                if (thread == 0) {
+                    // reader: what it sees must always be a subset of the copies
+                    for (int i = 0; i < OPERATIONS; i++) {
+                        final Set<BookCopy> available = library.availableCopies(book);
+                        assertTrue(all.containsAll(available));
+                        assertTrue(library.availableCount(book) <= all.size());
+                    }
+                    return;
+                }
+                for (int i = 0; i < OPERATIONS; i++) {
+                    final BookCopy copy = copies.get(random.nextInt(copies.size()));
+                    library.checkout(copy);
+                    library.isAvailable(copy);
+                    library.checkin(copy);
+                }
+            }
+        });
+
+        // every thread's last operation on each copy was a checkin
+        assertEquals(all, library.availableCopies(book));
+        for (BookCopy copy: copies) {
+            assertTrue(library.isAvailable(copy));
+        }
+        assertConsistent(library, book);
+    }
+
+    @Test
+    public void testCheckoutAnyExactlyOneWinner() throws Exception {
+        final Library library = new ConcurrentLibrary();
+        final Book book = new Book("Ulysses", Arrays.asList("James Joyce"), 1922);
+        final Set<BookCopy> all = new HashSet<BookCopy>();
+        for (int i = 0; i < OPERATIONS; i++) {
+            all.add(library.buy(book));
+        }
+        final List<List<BookCopy>> claimed = new ArrayList<List<BookCopy>>();
+        for (int i = 0; i < THREADS; i++) {
+            claimed.add(new ArrayList<BookCopy>());
+        }
+
+        runConcurrently(new Worker() {
+            public void run(int thread, Random random) {
+                for (BookCopy copy = library.checkoutAny(book); copy != null; copy = library.checkoutAny(book)) {
+                    claimed.get(thread).add(copy);
+                }
+            }
+        });
+
+        final Set<BookCopy> winners = new HashSet<BookCopy>();
+        int claims = 0;
+        for (List<BookCopy> copies: claimed) {
+            winners.addAll(copies);
+            claims += copies.size();
+        }
+        assertEquals(all.size(), claims);
+        assertEquals(all, winners);
+        assertEquals(0, library.availableCount(book));
+        assertConsistent(library, book);
+    }
+
+    @Test
+    public void testBuyLoseFindContention() throws Exception {
+        final Library library = new ConcurrentLibrary();
+        final List<Book> books = Arrays.asList(
+                new Book("Dune", Arrays.asList("Frank Herbert"), 1965),
+                new Book("Dune Messiah", Arrays.asList("Frank Herbert"), 1969),
+                new Book("Emma", Arrays.asList("Jane Austen"), 1815));
+
+        runConcurrently(new Worker() {
+            public void run(int thread, Random random) {
+                final List<BookCopy> mine = new ArrayList<BookCopy>();
+                for (int i = 0; i < OPERATIONS / 4; i++) {
+                    final Book book = books.get(random.nextInt(books.size()));
+                    switch (random.nextInt(4)) {
+                    case 0:
+                        mine.add(library.buy(book));
+                        break;
+                    case 1:
+                        if (!mine.isEmpty()) {
+                            library.lose(mine.remove(random.nextInt(mine.size())));
+                        }
+                        break;
+                    case 2:
+                        if (!mine.isEmpty()) {
+                            final BookCopy copy = mine.get(random.nextInt(mine.size()));
+                            library.checkout(copy);
+                            library.checkin(copy);
+                        }
+                        break;
+                    default:
+                        for (Book found: library.find(book.getTitle())) {
+                            assertTrue(books.contains(found));
+                        }
+                        break;
+                    }
+                }
+                // lose this thread's copies of one book, so some books lose their last copy
+                for (BookCopy copy: mine) {
+                    if (copy.getBook().equals(books.get(thread % books.size()))) {
+                        library.lose(copy);
+                    }
+                }
+            }
+        });
+
+        for (Book book: books) {
+            assertConsistent(library, book);
+            assertEquals(!library.allCopies(book).isEmpty(), library.find(book.getTitle()).contains(book));
+        }
+    }
+
+    @Test
+    public void testLoseCheckoutCheckinContention() throws Exception {
+        final Library library = new ConcurrentLibrary();
+        final Book book = new Book("Ulysses", Arrays.asList("James Joyce"), 1922);
+        final Book other = new Book("Dubliners", Arrays.asList("James Joyce"), 1914);
+        final BookCopy kept = library.buy(other);
+        // the copy every thread is checking out and in, until thread 0 loses it
+        final AtomicReference<BookCopy> current = new AtomicReference<BookCopy>(library.buy(book));
+        final AtomicBoolean done = new AtomicBoolean(false);
+
+        runConcurrently(new Worker() {
+            public void run(int thread, Random random) {
+                if (thread == 0) {
+                    for (int i = 0; i < OPERATIONS / 10; i++) {
+                        final BookCopy copy = current.get();
+                        current.set(library.buy(book));
+                        library.lose(copy);
+                        // a lost copy stays lost, whatever the other threads do with it
+                        assertTrue(!library.isAvailable(copy));
+                        assertTrue(!library.allCopies(book).contains(copy));
+                        assertTrue(!library.availableCopies(book).contains(copy));
+                    }
+                    done.set(true);
+                    return;
+                }
+                while (!done.get()) {
+                    final BookCopy copy = current.get();
+                    library.checkout(copy);
+                    library.checkin(copy);
+                }
+            }
+        });
+
+        final BookCopy last = current.get();
+        assertEquals(new HashSet<BookCopy>(Arrays.asList(last)), library.allCopies(book));
+        library.checkin(last);
+        assertTrue(library.isAvailable(last));
+        library.lose(last);
+        assertEquals(0, library.allCopies(book).size());
+        assertEquals(0, library.availableCount(book));
+        assertEquals(Arrays.asList(other), library.find("James Joyce"));
+        assertTrue(library.isAvailable(kept));
+    }
+
+    @Test
+    public void testLostCopyNeverListedUnderContention() throws Exception {
+        final Library library = new ConcurrentLibrary();
+        final Book book = new Book("Ulysses", Arrays.asList("James Joyce"), 1922);
+        // keeps the book owned, so its holding stays the same while copies are lost
+        final BookCopy kept = library.buy(book);
+        // the copy every thread is watching, until thread 0 loses it
+        final AtomicReference<BookCopy> current = new AtomicReference<BookCopy>(library.buy(book));
+        final AtomicBoolean done = new AtomicBoolean(false);
+
+        runConcurrently(new Worker() {
+            public void run(int thread, Random random) {
+                if (thread == 0) {
+                    for (int i = 0; i < OPERATIONS / 10; i++) {
+                        final BookCopy copy = current.get();
+                        current.set(library.buy(book));
+                        library.lose(copy);
+                    }
+                    done.set(true);
+                    return;
+                }
+                while (!done.get()) {
+                    final BookCopy copy = current.get();
+                    if (library.getCopy(copy.getId()) != copy) {
+                        // lost already, so it must not be listed any more
+                        assertTrue(!library.allCopies(book).contains(copy));
+                        assertTrue(!library.allCopiesView(book).contains(copy));
+                        for (BookCopy listed: library.allCopiesView(book)) {
+                            assertTrue(listed != copy);
+                        }
+                    }
+                }
+            }
+        });
+
+        assertEquals(new HashSet<BookCopy>(Arrays.asList(kept, current.get())), library.allCopies(book));
+        assertEquals(library.allCopies(book), library.allCopiesView(book));
+        assertConsistent(library, book);
+    }
+
+    @Test
+    public void testCheckedOutNeverAvailableUnderContention() throws Exception {
+        final Library library = new ConcurrentLibrary();
+        final Book book = new Book("Ulysses", Arrays.asList("James Joyce"), 1922);
+        for (int i = 0; i < THREADS; i++) {
+            library.buy(book);
+        }
+
+        runConcurrently(new Worker() {
+            public void run(int thread, Random random) {
+                for (int i = 0; i < OPERATIONS / 4; i++) {
+                    final BookCopy copy = library.checkoutAny(book);
+                    if (copy == null) {
+                        continue;
+                    }
+                    // only this thread may check copy in or lose it, so however the others
+                    // interleave it must stay checked out
+                    assertTrue(!library.isAvailable(copy));
+                    assertTrue(!library.availableCopies(book).contains(copy));
+                    assertTrue(!library.availableCopiesView(book).contains(copy));
+                    assertTrue(library.allCopies(book).contains(copy));
+                    if (random.nextInt(10) == 0) {
+                        library.lose(copy);
+                        assertTrue(!library.isAvailable(copy));
+                        library.buy(book);
+                    } else {
+                        library.checkin(copy);
+                    }
+                }
+            }
+        });
+
+        assertEquals(THREADS, library.allCopies(book).size());
+        assertEquals(THREADS, library.availableCount(book));
+        assertConsistent(library, book);
+    }
+
+    /*
+     * Assert that availableCopies(book) is exactly the copies of book that are available.
+     */
+    private static void assertConsistent(Library library, Book book) {
+        final Set<BookCopy> available = new HashSet<BookCopy>();
+        for (BookCopy copy: library.allCopies(book)) {
+            assertEquals(book, copy.getBook());
+            if (library.isAvailable(copy)) {
+                available.add(copy);
+            }
+        }
+        assertEquals(available, library.availableCopies(book));
+        assertEquals(available.size(), library.availableCount(book));
+    }
+
+    /*
+     * Work done by each of the threads of runConcurrently.
+     */
+    private interface Worker {
+        void run(int thread, Random random) throws Exception;
+    }
+
+    /*
+     * Run worker on THREADS threads started together, and rethrow the first failure of any.
+     */
+    private static void runConcurrently(final Worker worker) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < THREADS; i++) {
+            final int thread = i;
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        worker.run(thread, new Random(thread));
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            }));
+        }
+        for (Thread thread: threads) {
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread: threads) {
+            thread.join();
+        }
+        if (failure.get() instanceof Error) {
+            throw (Error) failure.get();
+        } else if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+
+}
@@ -0,0 +1,46 @@
+package library;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Regression benchmark for the allocation rate of SmallLibrary.find().
+ *
+ * Not a JUnit test; run it by hand with
+ *     java -cp bin library.FindAllocationBenchmark [copies] [finds]
+ * It reports the bytes allocated per call to find, as counted by the JVM for the running thread.
+ */
+public class FindAllocationBenchmark {
+
+    public static void main(String[] args) {
+        final int copies = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        final int finds = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        final Library library = new SmallLibrary();
+        for (int i = 0; i < copies; i++) {
+            library.buy(SyntheticCatalog.book(i % (copies / 4 + 1)));
+        }
+
+        final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long thread = Thread.currentThread().getId();
+        final String[] queries = { "Sea", "Author 7", "Garden 3", "nothing matches this" };
+
+        // warm up, so the JIT has compiled find before we measure
+        int results = 0;
+        for (int i = 0; i < finds; i++) {
+            results += library.find(queries[i % queries.length]).size();
+        }
+
+        final long startBytes = threads.getThreadAllocatedBytes(thread);
+        final long startNanos = System.nanoTime();
+        for (int i = 0; i < finds; i++) {
+            results += library.find(queries[i % queries.length]).size();
+        }
+        final long nanos = System.nanoTime() - startNanos;
+        final long bytes = threads.getThreadAllocatedBytes(thread) - startBytes;
+
+        System.out.printf("SmallLibrary.find over %d copies: %,d bytes/find, %,d us/find (%d results)%n",
+                copies, bytes / finds, nanos / finds / 1000, results);
+    }
+
+}
@@ -0,0 +1,93 @@
+package library;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Test suite for FindResults.
+ */
+public class FindResultsTest {
+
+    /*
+     * Testing strategy
+     * ==================
+     * 
+     * keyMatch:
+     *   key equals query, key contains query, query contains key, neither
+     * matches:
+     *   by a key flag, by a term of the title, of an author, by no term; query term
+     *   at the start, middle, end of a longer word of a key
+     * addKeyMatch, addTermMatch:
+     *   book added once, book added more than once, flag and terms on the same book
+     * toList:
+     *   0 books, >1 books with different scores, same score and different title/authors,
+     *   same title/authors and different years
+     */
+    
+    private static final Book WALDEN_1854 = new Book("Walden", Arrays.asList("Henry David Thoreau"), 1854);
+    private static final Book WALDEN_1995 = new Book("Walden", Arrays.asList("Henry David Thoreau"), 1995);
+    private static final Book WALDEN_TWO = new Book("Walden Two", Arrays.asList("B. F. Skinner"), 1948);
+    private static final Book CIVIL_DISOBEDIENCE = new Book("Civil Disobedience", Arrays.asList("Henry David Thoreau"), 1849);
+    
+    @Test
+    public void testKeyMatch() {
+        assertEquals(FindResults.EXACT_MATCH, FindResults.keyMatch("Walden", "Walden"));
+        assertEquals(FindResults.CONTAINS_QUERY, FindResults.keyMatch("Walden Two", "Walden"));
+        assertEquals(FindResults.CONTAINED_IN_QUERY, FindResults.keyMatch("Walden", "Walden Pond"));
+        assertEquals(0, FindResults.keyMatch("Walden", "Pond"));
+    }
+    
+    @Test
+    public void testMatches() {
+        assertTrue(FindResults.matches(WALDEN_TWO, "Wal", InvertedIndex.terms("Wal")));
+        assertTrue(FindResults.matches(WALDEN_TWO, "Part Two", InvertedIndex.terms("Part Two")));
+        assertTrue(FindResults.matches(CIVIL_DISOBEDIENCE, "David Hume", InvertedIndex.terms("David Hume")));
+        assertFalse(FindResults.matches(CIVIL_DISOBEDIENCE, "Thor enry obedience",
+                InvertedIndex.terms("Thor enry obedience")));
+        assertFalse(FindResults.matches(WALDEN_TWO, "Pond alde", InvertedIndex.terms("Pond alde")));
+    }
+    
+    @Test
+    public void testEmpty() {
+        FindResults results = new FindResults();
+        assertEquals(Collections.emptyList(), results.toList());
+    }
+    
+    @Test
+    public void testToListRanking() {
+        FindResults results = new FindResults();
+        results.addTermMatch(CIVIL_DISOBEDIENCE);
+        results.addKeyMatch(WALDEN_TWO, FindResults.CONTAINS_QUERY);
+        results.addKeyMatch(WALDEN_1854, FindResults.EXACT_MATCH);
+        results.addKeyMatch(WALDEN_1995, FindResults.EXACT_MATCH);
+        results.addKeyMatch(WALDEN_1995, FindResults.EXACT_MATCH);
+        results.addTermMatch(CIVIL_DISOBEDIENCE);
+        
+        assertEquals(Arrays.asList(WALDEN_1995, WALDEN_1854, WALDEN_TWO, CIVIL_DISOBEDIENCE), results.toList());
+    }
+    
+    @Test
+    public void testTermsRankBelowFlags() {
+        FindResults results = new FindResults();
+        results.addKeyMatch(WALDEN_TWO, FindResults.CONTAINED_IN_QUERY);
+        for (int i = 0; i < 5; i++) {
+            results.addTermMatch(CIVIL_DISOBEDIENCE);
+        }
+        results.addTermMatch(WALDEN_1854);
+        results.addTermMatch(WALDEN_1854);
+        
+        assertEquals(Arrays.asList(WALDEN_TWO, CIVIL_DISOBEDIENCE, WALDEN_1854), results.toList());
+    }
+    
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+}
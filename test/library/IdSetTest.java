@@ -0,0 +1,101 @@
+package library;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Test suite for IdSet.
+ */
+public class IdSetTest {
+
+    /*
+     * Testing strategy
+     * ==================
+     * 
+     * add: to empty set, past the initial capacity
+     * remove: only member, first, middle, last member
+     * removeAny: until empty
+     * contains: member, removed member, never added, member of another set sharing positions
+     */
+    
+    /*
+     * @return the members of set
+     */
+    private static Set<Integer> members(IdSet set) {
+        Set<Integer> members = new HashSet<>();
+        for (int i = 0; i < set.size(); i++) {
+            members.add(set.get(i));
+        }
+        return members;
+    }
+    
+    @Test
+    public void testAddRemove() {
+        int[] positions = new int[10];
+        IdSet set = new IdSet();
+        assertTrue(set.isEmpty());
+        for (int id: Arrays.asList(3, 0, 7, 5, 9)) {
+            set.add(id, positions);
+        }
+        assertEquals(new HashSet<>(Arrays.asList(0, 3, 5, 7, 9)), members(set));
+        
+        set.remove(3, positions);
+        set.remove(7, positions);
+        set.remove(9, positions);
+        assertEquals(new HashSet<>(Arrays.asList(0, 5)), members(set));
+        assertTrue(set.contains(0, positions));
+        assertTrue(set.contains(5, positions));
+        assertFalse(set.contains(3, positions));
+        assertFalse(set.contains(9, positions));
+        assertFalse(set.contains(1, positions));
+        
+        set.remove(0, positions);
+        set.remove(5, positions);
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(0, positions));
+    }
+    
+    @Test
+    public void testSharedPositions() {
+        int[] positions = new int[4];
+        IdSet set1 = new IdSet();
+        IdSet set2 = new IdSet();
+        set1.add(0, positions);
+        set2.add(1, positions);
+        set2.add(2, positions);
+        set1.add(3, positions);
+        
+        assertTrue(set1.contains(0, positions));
+        assertFalse(set1.contains(1, positions));
+        assertFalse(set1.contains(2, positions));
+        assertTrue(set2.contains(2, positions));
+        assertFalse(set2.contains(3, positions));
+        
+        set2.remove(1, positions);
+        assertTrue(set2.contains(2, positions));
+        assertFalse(set1.contains(2, positions));
+    }
+    
+    @Test
+    public void testRemoveAny() {
+        int[] positions = new int[3];
+        IdSet set = new IdSet();
+        set.add(2, positions);
+        set.add(0, positions);
+        set.add(1, positions);
+        
+        Set<Integer> removed = new HashSet<>();
+        while (!set.isEmpty()) {
+            removed.add(set.removeAny());
+        }
+        assertEquals(new HashSet<>(Arrays.asList(0, 1, 2)), removed);
+    }
+
+}
@@ -0,0 +1,137 @@
+package library;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Test;
+
+import library.InstrumentedLibrary.Operation;
+import library.InstrumentedLibrary.Stats;
+
+/**
+ * Test suite for InstrumentedLibrary's measurements, and the Histogram they are kept in.
+ */
+public class InstrumentedLibraryTest {
+
+    /*
+     * NOTE: use this file only for tests of the measurements.  InstrumentedLibrary forwards
+     * every Library operation, whose behavior is tested in LibraryTest.java
+     */
+
+    /*
+     * Testing strategy
+     * ==================
+     *
+     * calls: operation never called, called once, called many times
+     * noOps: checkout of available / checked-out copy; checkin of checked-out / available
+     *   copy; checkoutAny with / without an available copy
+     * resultSizes: find with zero, several results; allCopies, availableCopies
+     * Histogram: empty; values below and above the exact range; percentiles 0, 50, 100;
+     *   negative value
+     */
+
+    private static final Book EMMA = new Book("Emma", Arrays.asList("Jane Austen"), 1815);
+    private static final Book PERSUASION = new Book("Persuasion", Arrays.asList("Jane Austen"), 1817);
+
+    @Test
+    public void testCallsAndNoOps() {
+        final InstrumentedLibrary library = new InstrumentedLibrary(new BigLibrary());
+        final BookCopy copy = library.buy(EMMA);
+        library.checkout(copy);
+        library.checkout(copy);
+        library.checkin(copy);
+        library.checkin(copy);
+        library.checkin(copy);
+        assertEquals(copy, library.checkoutAny(EMMA));
+        assertEquals(null, library.checkoutAny(EMMA));
+
+        final Map<Operation, Stats> stats = library.snapshot();
+        assertEquals(1, stats.get(Operation.BUY).calls());
+        assertEquals(2, stats.get(Operation.CHECKOUT).calls());
+        assertEquals(1, stats.get(Operation.CHECKOUT).noOps());
+        assertEquals(3, stats.get(Operation.CHECKIN).calls());
+        assertEquals(2, stats.get(Operation.CHECKIN).noOps());
+        assertEquals(2, stats.get(Operation.CHECKOUT_ANY).calls());
+        assertEquals(1, stats.get(Operation.CHECKOUT_ANY).noOps());
+        assertEquals(0, stats.get(Operation.LOSE).calls());
+        // the isAvailable calls made to detect no-ops are not counted
+        assertEquals(0, stats.get(Operation.IS_AVAILABLE).calls());
+        assertEquals(0, stats.get(Operation.BUY).noOps());
+    }
+
+    @Test
+    public void testResultSizes() {
+        final InstrumentedLibrary library = new InstrumentedLibrary(new SmallLibrary());
+        library.buy(EMMA);
+        library.buy(EMMA);
+        library.buy(PERSUASION);
+        assertEquals(2, library.find("Jane Austen").size());
+        assertEquals(0, library.find("Dickens").size());
+        assertEquals(2, library.allCopies(EMMA).size());
+        assertEquals(1, library.availableCopies(PERSUASION).size());
+
+        final Map<Operation, Stats> stats = library.snapshot();
+        assertEquals(2, stats.get(Operation.FIND).resultSizes().count());
+        assertEquals(2, stats.get(Operation.FIND).resultSizes().max());
+        assertEquals(0, stats.get(Operation.FIND).resultSizes().valueAtPercentile(0));
+        assertEquals(1.0, stats.get(Operation.FIND).resultSizes().mean(), 0);
+        assertEquals(2, stats.get(Operation.ALL_COPIES).resultSizes().max());
+        assertEquals(1, stats.get(Operation.AVAILABLE_COPIES).resultSizes().max());
+        assertEquals(0, stats.get(Operation.BUY).resultSizes().count());
+        assertTrue(stats.get(Operation.FIND).latencyNanos().max() > 0);
+    }
+
+    @Test
+    public void testHistogramEmpty() {
+        final Histogram.Snapshot snapshot = new Histogram().snapshot();
+        assertEquals(0, snapshot.count());
+        assertEquals(0, snapshot.max());
+        assertEquals(0.0, snapshot.mean(), 0);
+        assertEquals(0, snapshot.valueAtPercentile(50));
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        final Histogram histogram = new Histogram();
+        for (long v = 1; v <= 1000; v++) {
+            histogram.record(v);
+        }
+        histogram.record(-5);
+        final Histogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(1001, snapshot.count());
+        assertEquals(1000, snapshot.max());
+        assertEquals(0, snapshot.valueAtPercentile(0));
+        assertEquals(1000, snapshot.valueAtPercentile(100));
+        final long median = snapshot.valueAtPercentile(50);
+        assertTrue("median " + median, median >= 500 && median <= 500 * 9 / 8);
+    }
+
+    @Test
+    public void testHistogramExactSmallValues() {
+        final Histogram histogram = new Histogram();
+        for (long v = 0; v < 8; v++) {
+            histogram.record(v);
+        }
+        final Histogram.Snapshot snapshot = histogram.snapshot();
+        for (int v = 0; v < 8; v++) {
+            assertEquals(v, snapshot.valueAtPercentile(100.0 * (v + 1) / 8));
+        }
+    }
+
+    @Test
+    public void testHistogramLargeValues() {
+        final Histogram histogram = new Histogram();
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(1L << 40);
+        final Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(Long.MAX_VALUE, snapshot.max());
+        final long low = snapshot.valueAtPercentile(50);
+        assertTrue("low " + low, low >= 1L << 40 && low <= (1L << 40) * 9 / 8);
+        assertEquals(Long.MAX_VALUE, snapshot.valueAtPercentile(100));
+    }
+
+}
@@ -0,0 +1,295 @@
+package library;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import library.BookCopy.Condition;
+
+/**
+ * Test suite for JournaledLibrary's stronger specs: durability and recovery.
+ */
+public class JournaledLibraryTest {
+
+    /*
+     * NOTE: use this file only for tests of JournaledLibrary's journal and recovery.
+     * Tests of all other Library operations should be in LibraryTest.java
+     */
+
+    /*
+     * Testing strategy
+     * ==================
+     *
+     * open:
+     *   no snapshot and no journal; journal only; snapshot and journal
+     *   journal ends in a partly written record, in a record with a bad checksum; record
+     *   before the last damaged; file is not a journal
+     *   journal longer than one read chunk; record longer than one read chunk
+     * mutations journaled: buy, checkout, checkoutAny, checkin, lose, setCondition
+     * sync: explicit; by the committer thread after the commit interval
+     * checkpoint: journal emptied; journal from before the snapshot replayed again (crash
+     *   between saving the snapshot and emptying the journal); mutations made by another
+     *   thread while checkpointing
+     * close: further mutations rejected
+     */
+
+    private static final Book EMMA = new Book("Emma", Arrays.asList("Jane Austen"), 1815);
+    private static final Book DUNE = new Book("Dune", Arrays.asList("Frank Herbert"), 1965);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path snapshot() {
+        return folder.getRoot().toPath().resolve("library.snapshot");
+    }
+
+    private Path journal() {
+        return folder.getRoot().toPath().resolve("library.journal");
+    }
+
+    private JournaledLibrary open() throws IOException {
+        return JournaledLibrary.open(snapshot(), journal(), 10);
+    }
+
+    /*
+     * Make some mutations of every kind.
+     */
+    private static void mutate(JournaledLibrary library) {
+        final BookCopy emma1 = library.buy(EMMA);
+        final BookCopy emma2 = library.buy(EMMA);
+        final BookCopy emma3 = library.buy(EMMA);
+        final BookCopy dune = library.buy(DUNE);
+        library.checkout(emma1);
+        library.checkoutAny(DUNE);
+        library.checkin(dune);
+        library.checkout(dune);
+        library.setCondition(emma2, Condition.DAMAGED);
+        library.lose(emma3);
+    }
+
+    /*
+     * @return a description of library's copies of EMMA and DUNE, equal for equivalent libraries
+     */
+    private static List<String> describe(Library library) {
+        final List<String> description = new ArrayList<String>();
+        for (Book book: Arrays.asList(EMMA, DUNE)) {
+            for (BookCopy copy: library.allCopies(book)) {
+                description.add(copy.getId() + " " + copy + " " + library.isAvailable(copy));
+            }
+            description.add(book + " found: " + library.find(book.getTitle()).contains(book));
+        }
+        Collections.sort(description);
+        return description;
+    }
+
+    @Test
+    public void testRecoverFromJournal() throws IOException {
+        final List<String> expected;
+        try (JournaledLibrary library = open()) {
+            mutate(library);
+            expected = describe(library);
+        }
+        try (JournaledLibrary recovered = open()) {
+            assertEquals(expected, describe(recovered));
+            assertEquals(1, recovered.availableCount(EMMA));
+            assertEquals(0, recovered.availableCount(DUNE));
+        }
+    }
+
+    @Test
+    public void testRecoverWithoutClose() throws IOException {
+        final JournaledLibrary library = open();
+        mutate(library);
+        library.sync();
+        final List<String> expected = describe(library);
+        // the crashed process is never closed; recover from what reached the disk
+        try (JournaledLibrary recovered = open()) {
+            assertEquals(expected, describe(recovered));
+        }
+        library.close();
+    }
+
+    @Test
+    public void testGroupCommit() throws Exception {
+        try (JournaledLibrary library = open()) {
+            library.buy(EMMA);
+            final long written = Files.size(journal());
+            for (int i = 0; i < 200 && Files.size(journal()) == written; i++) {
+                Thread.sleep(10);
+            }
+            assertTrue("committer thread should write the journal", Files.size(journal()) > written);
+        }
+    }
+
+    @Test
+    public void testTornRecordDiscarded() throws IOException {
+        final List<String> expected;
+        try (JournaledLibrary library = open()) {
+            mutate(library);
+            expected = describe(library);
+        }
+        // a crash in the middle of appending a record
+        Files.write(journal(), new byte[] { 0, 0, 0, 40, 1, 2, 3 }, StandardOpenOption.APPEND);
+        try (JournaledLibrary recovered = open()) {
+            assertEquals(expected, describe(recovered));
+            recovered.buy(DUNE);
+        }
+        try (JournaledLibrary recovered = open()) {
+            assertEquals(2, recovered.allCopies(DUNE).size());
+        }
+    }
+
+    @Test
+    public void testTornLastRecordDiscarded() throws IOException {
+        final List<String> expected;
+        try (JournaledLibrary library = open()) {
+            mutate(library);
+            expected = describe(library);
+            library.buy(DUNE);
+        }
+        // the last record, the buy of DUNE, was only partly overwritten
+        final byte[] bytes = Files.readAllBytes(journal());
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(journal(), bytes);
+        try (JournaledLibrary recovered = open()) {
+            assertEquals(expected, describe(recovered));
+        }
+    }
+
+    @Test
+    public void testCorruptRecordBeforeLast() throws IOException {
+        try (JournaledLibrary library = open()) {
+            for (int i = 0; i < 100; i++) {
+                library.buy(EMMA);
+            }
+        }
+        final byte[] bytes = Files.readAllBytes(journal());
+        bytes[40] ^= 1;
+        Files.write(journal(), bytes);
+        try {
+            open().close();
+            fail("expected IOException");
+        } catch (IOException e) {
+            // expected; the records after the damaged one must survive
+        }
+        assertArrayEquals(bytes, Files.readAllBytes(journal()));
+    }
+
+    @Test
+    public void testCheckpoint() throws IOException {
+        final List<String> expected;
+        try (JournaledLibrary library = open()) {
+            mutate(library);
+            library.checkpoint();
+            assertTrue(Files.exists(snapshot()));
+            library.checkin(library.allCopies(DUNE).iterator().next());
+            expected = describe(library);
+        }
+        try (JournaledLibrary recovered = open()) {
+            assertEquals(expected, describe(recovered));
+        }
+    }
+
+    @Test
+    public void testReplayJournalOlderThanSnapshot() throws IOException {
+        final List<String> expected;
+        final byte[] oldJournal;
+        try (JournaledLibrary library = open()) {
+            mutate(library);
+            library.sync();
+            oldJournal = Files.readAllBytes(journal());
+            library.checkpoint();
+            expected = describe(library);
+        }
+        // a crash after saving the snapshot but before emptying the journal
+        Files.write(journal(), oldJournal);
+        try (JournaledLibrary recovered = open()) {
+            assertEquals(expected, describe(recovered));
+        }
+    }
+
+    @Test
+    public void testRecoverLongJournal() throws IOException {
+        final List<String> authors = new ArrayList<String>();
+        for (int i = 0; i < 10000; i++) {
+            authors.add("Contributor " + i);
+        }
+        // its buy record is longer than the journal is read at a time
+        final Book anthology = new Book("Anthology", authors, 2000);
+        final List<String> expected;
+        try (JournaledLibrary library = open()) {
+            for (int i = 0; i < 3000; i++) {
+                library.checkout(library.buy(new Book("Volume " + i, Arrays.asList("Editor"), 2000)));
+            }
+            library.buy(anthology);
+            mutate(library);
+            expected = describe(library);
+        }
+        assertTrue(Files.size(journal()) > 4 * 65536);
+        try (JournaledLibrary recovered = open()) {
+            assertEquals(expected, describe(recovered));
+            assertEquals(1, recovered.availableCount(anthology));
+            assertEquals(Arrays.asList(anthology), recovered.find("Contributor 9999"));
+            assertEquals(0, recovered.availableCount(new Book("Volume 2999", Arrays.asList("Editor"), 2000)));
+        }
+    }
+
+    @Test
+    public void testCheckpointWhileMutating() throws Exception {
+        final List<String> expected;
+        try (final JournaledLibrary library = open()) {
+            mutate(library);
+            final Thread desk = new Thread(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < 2000; i++) {
+                        final BookCopy copy = library.buy(i % 2 == 0 ? EMMA : DUNE);
+                        library.checkout(copy);
+                        if (i % 3 == 0) {
+                            library.checkin(copy);
+                        }
+                    }
+                }
+            });
+            desk.start();
+            for (int i = 0; i < 5; i++) {
+                library.checkpoint();
+            }
+            desk.join();
+            expected = describe(library);
+        }
+        try (JournaledLibrary recovered = open()) {
+            assertEquals(expected, describe(recovered));
+        }
+    }
+
+    @Test(expected=IOException.class)
+    public void testOpenNotJournal() throws IOException {
+        Files.write(journal(), "not a journal".getBytes("UTF-8"));
+        open();
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testMutateAfterClose() throws IOException {
+        final JournaledLibrary library = open();
+        final BookCopy copy = library.buy(EMMA);
+        library.close();
+        assertFalse(library.find("Emma").isEmpty());
+        library.checkout(copy);
+    }
+
+}
@@ -0,0 +1,210 @@
+package library;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Scaling benchmark for every Library operation, across Library implementations.
+ *
+ * Not a JUnit test; run it by hand with
+ *     java -cp bin library.LibraryBenchmark [maxCopies] [implementation...]
+ * where implementation is Small, Big or Concurrent (default Small and Big).  For each
+ * implementation and each library size 10^3, 10^4, ... up to maxCopies (default 10^5), it
+ * fills a library with that many copies and reports the mean time per call of each
+ * operation, taking the best of several rounds to filter out GC and JIT noise.  Give the JVM
+ * enough heap for the largest size, e.g. -Xmx8g for 10^7 copies.
+ *
+ * Books come from SyntheticCatalog, and popular books have more copies.
+ *
+ * Each find is timed twice, repeating one query: as is, which BigLibrary answers from its
+ * cache of recent results, and uncached, with that cache cleared before every call, so the
+ * uncached rows measure the index itself.
+ */
+public class LibraryBenchmark {
+
+    private static final int ROUNDS = 5;
+    private static final int CALLS_PER_ROUND = 2000;
+    // SmallLibrary's find is linear in the number of copies, so larger sizes take too long
+    private static final int MAX_SMALL_COPIES = 100000;
+
+    /*
+     * One operation to time; run performs calls calls of it, returning anything derived from
+     * their results so the JIT cannot skip them.
+     */
+    private interface Operation {
+        long run(int calls);
+    }
+
+    private static long sink = 0;
+
+    public static void main(String[] args) {
+        final int maxCopies = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final List<String> implementations = args.length > 1
+                ? Arrays.asList(args).subList(1, args.length)
+                : Arrays.asList("Small", "Big");
+
+        System.out.printf("%-12s %10s %-24s %12s%n", "library", "copies", "operation", "ns/call");
+        for (String implementation: implementations) {
+            for (int copies = 1000; copies <= maxCopies; copies *= 10) {
+                if (implementation.equals("Small") && copies > MAX_SMALL_COPIES) {
+                    break;
+                }
+                benchmark(implementation, copies);
+            }
+        }
+        // keep the results live
+        System.out.println(sink == 42 ? "" : "done");
+    }
+
+    /*
+     * @return a new empty library of the named implementation
+     */
+    private static Library makeLibrary(String implementation) {
+        switch (implementation) {
+        case "Small": return new SmallLibrary();
+        case "Big": return new BigLibrary();
+        case "Concurrent": return new ConcurrentLibrary();
+        default: throw new IllegalArgumentException("unknown library " + implementation);
+        }
+    }
+
+    /*
+     * Time each operation on a library of the named implementation holding copies copies.
+     */
+    private static void benchmark(final String implementation, final int copies) {
+        final Library library = makeLibrary(implementation);
+        final Random random = new Random(copies);
+        final int books = copies / 4;
+        final List<BookCopy> owned = new ArrayList<BookCopy>(copies);
+        for (int i = 0; i < copies; i++) {
+            owned.add(library.buy(SyntheticCatalog.book(SyntheticCatalog.skewed(random, books))));
+        }
+        final int[] picks = new int[CALLS_PER_ROUND];
+        for (int i = 0; i < picks.length; i++) {
+            picks[i] = random.nextInt(copies);
+        }
+        final Book selective = owned.get(picks[0]).getBook();
+        final String selectiveQuery = selective.getTitle();
+        final String broadQuery = SyntheticCatalog.TITLE_WORDS.get(0);
+
+        report(implementation, copies, "buy+lose", new Operation() {
+            // buy is timed together with lose, so the library stays the same size
+            public long run(int calls) {
+                long result = 0;
+                for (int i = 0; i < calls; i++) {
+                    final BookCopy copy = library.buy(owned.get(picks[i]).getBook());
+                    library.lose(copy);
+                    result += copy.hashCode();
+                }
+                return result;
+            }
+        });
+        report(implementation, copies, "checkout+checkin", new Operation() {
+            public long run(int calls) {
+                for (int i = 0; i < calls; i++) {
+                    final BookCopy copy = owned.get(picks[i]);
+                    library.checkout(copy);
+                    library.checkin(copy);
+                }
+                return calls;
+            }
+        });
+        report(implementation, copies, "isAvailable", new Operation() {
+            public long run(int calls) {
+                long result = 0;
+                for (int i = 0; i < calls; i++) {
+                    result += library.isAvailable(owned.get(picks[i])) ? 1 : 0;
+                }
+                return result;
+            }
+        });
+        report(implementation, copies, "allCopies", new Operation() {
+            public long run(int calls) {
+                long result = 0;
+                for (int i = 0; i < calls; i++) {
+                    result += library.allCopies(owned.get(picks[i]).getBook()).size();
+                }
+                return result;
+            }
+        });
+        report(implementation, copies, "availableCopies", new Operation() {
+            public long run(int calls) {
+                long result = 0;
+                for (int i = 0; i < calls; i++) {
+                    result += library.availableCopies(owned.get(picks[i]).getBook()).size();
+                }
+                return result;
+            }
+        });
+        reportFind(implementation, copies, "find selective", library, selectiveQuery, -1);
+        reportFind(implementation, copies, "find broad", library, broadQuery, -1);
+        reportFind(implementation, copies, "find broad top 10", library, broadQuery, 10);
+    }
+
+    /*
+     * Time find of query, or its first page of limit books if limit is not -1, both as is
+     * and with any cache of find results cleared before every call.
+     */
+    private static void reportFind(String implementation, int copies, String name,
+            final Library library, final String query, final int limit) {
+        report(implementation, copies, name, new Operation() {
+            public long run(int calls) {
+                long result = 0;
+                for (int i = 0; i < calls; i++) {
+                    result += find(library, query, limit).size();
+                }
+                return result;
+            }
+        });
+        report(implementation, copies, name + " uncached", new Operation() {
+            public long run(int calls) {
+                long result = 0;
+                for (int i = 0; i < calls; i++) {
+                    clearFindCache(library);
+                    result += find(library, query, limit).size();
+                }
+                return result;
+            }
+        });
+    }
+
+    /*
+     * @return library.find(query), or its first page of limit books if limit is not -1
+     */
+    private static List<Book> find(Library library, String query, int limit) {
+        return limit < 0 ? library.find(query) : library.find(query, 0, limit);
+    }
+
+    /*
+     * Clear library's cache of find results, if it has one.
+     */
+    private static void clearFindCache(Library library) {
+        if (library instanceof BigLibrary) {
+            ((BigLibrary) library).clearFindCache();
+        }
+    }
+
+    /*
+     * Print the best mean time per call of operation over several rounds.  Slow operations
+     * get fewer calls per round, so that every operation takes about the same wall time.
+     */
+    private static void report(String implementation, int copies, String name, Operation operation) {
+        // warm up, and estimate how many calls fit in a round
+        final long start = System.nanoTime();
+        sink += operation.run(1);
+        final long single = Math.max(1, System.nanoTime() - start);
+        final int calls = (int) Math.max(1, Math.min(CALLS_PER_ROUND, 50000000L / single));
+        sink += operation.run(calls);
+
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            final long roundStart = System.nanoTime();
+            sink += operation.run(calls);
+            best = Math.min(best, (System.nanoTime() - roundStart) / calls);
+        }
+        System.out.printf("%-12s %,10d %-24s %,12d%n", implementation, copies, name, best);
+    }
+
+}
@@ -2,12 +2,18 @@ package library;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -26,7 +32,7 @@ public class LibraryTest {
     /*
      * Note: all the tests you write here must be runnable against any
      * Library class that follows the spec.  JUnit will automatically
-     * run these tests against both SmallLibrary and BigLibrary.
+     * run these tests against SmallLibrary, BigLibrary and ConcurrentLibrary.
      */
 
     /**
@@ -38,7 +44,8 @@ public class LibraryTest {
     public static Object[] allImplementationClassNames() {
         return new Object[] { 
             "library.SmallLibrary", 
-            "library.BigLibrary"
+            "library.BigLibrary",
+            "library.ConcurrentLibrary"
         }; 
     }
 
@@ -78,10 +85,26 @@ public class LibraryTest {
      * Test allCopies with no copies in the library
      * Test allCopies with both checked-out and available copies
      * Test allAvailableCopies to with no available copies and some available copies
+     * Test allCopiesView and availableCopiesView with no copies owned, some copies checked out;
+     *   make sure the views cannot be modified
+     * Test availableCount with no copies owned, some available, none available, after lose
+     * Test checkoutAny with no copies owned, some available, none left, after checkin and lose
+     * Test getCopy, for libraries that number their copies: ids of bought copies, of lost
+     *   copies, negative and unused ids, ids of copies of another library
+     * Test buyAll with no books, distinct books, the same book more than once
+     * Test checkoutAll and checkinAll with no copies, copies of one book and of several books
      * Test find with multiple copies of the same book
      * Test find with no books found - allow empty list as well as null list
      * Test find with books that have same title and author but different publication dates
      * Test lose with books that are available and books that are checked out
+     * Test buy, find and lose of a book that lists the same author twice
+     * Test checkout, checkin, isAvailable and lose with copies owned by another library,
+     *   and with copies already lost
+     * Test find with offset and limit: first page, middle page, page past the end, limit 0
+     * Test findStream with no results, with several results, stopped after the first result
+     * Test complete: prefix of titles and of authors, string that is both a title and an
+     *   author, book with more editions ranked first, completions after the last copy of a
+     *   book is lost; k above 10, with more and fewer completions than k
      */
     
     @Test
@@ -146,6 +169,167 @@ public class LibraryTest {
         assertEquals(2, copies.size());
     }
     
+    @Test
+    public void testCopiesViews() {
+        Library library = makeLibrary();
+        Book book = new Book("title", Arrays.asList("author"), 2000);
+        assertEquals(Collections.emptySet(), library.allCopiesView(book));
+        assertEquals(Collections.emptySet(), library.availableCopiesView(book));
+        
+        BookCopy copy1 = library.buy(book);
+        BookCopy copy2 = library.buy(book);
+        library.checkout(copy1);
+        
+        assertEquals(new HashSet<>(Arrays.asList(copy1, copy2)), library.allCopiesView(book));
+        assertEquals(library.allCopies(book), library.allCopiesView(book));
+        assertEquals(Collections.singleton(copy2), library.availableCopiesView(book));
+        assertEquals(library.availableCopies(book), library.availableCopiesView(book));
+    }
+    
+    @Test(expected=UnsupportedOperationException.class)
+    public void testAllCopiesViewUnmodifiable() {
+        Library library = makeLibrary();
+        Book book = new Book("title", Arrays.asList("author"), 2000);
+        library.buy(book);
+        library.allCopiesView(book).clear();
+    }
+    
+    @Test(expected=UnsupportedOperationException.class)
+    public void testAvailableCopiesViewUnmodifiable() {
+        Library library = makeLibrary();
+        Book book = new Book("title", Arrays.asList("author"), 2000);
+        library.buy(book);
+        library.availableCopiesView(book).clear();
+    }
+    
+    @Test
+    public void testAvailableCount() {
+        Library library = makeLibrary();
+        Book book1 = new Book("title", Arrays.asList("author"), 2000);
+        Book book2 = new Book("TITLE", Arrays.asList("Fred Bloggs"), 1992);
+        assertEquals(0, library.availableCount(book1));
+        
+        BookCopy copy1 = library.buy(book1);
+        BookCopy copy2 = library.buy(book1);
+        library.buy(book2);
+        assertEquals(2, library.availableCount(book1));
+        
+        library.checkout(copy1);
+        library.checkout(copy1);
+        assertEquals(1, library.availableCount(book1));
+        library.checkout(copy2);
+        assertEquals(0, library.availableCount(book1));
+        assertEquals(1, library.availableCount(book2));
+        
+        library.checkin(copy1);
+        assertEquals(1, library.availableCount(book1));
+        library.lose(copy1);
+        assertEquals(0, library.availableCount(book1));
+        library.checkin(copy2);
+        assertEquals(1, library.availableCount(book1));
+    }
+    
+    @Test
+    public void testCheckoutAny() {
+        Library library = makeLibrary();
+        Book book1 = new Book("title", Arrays.asList("author"), 2000);
+        Book book2 = new Book("TITLE", Arrays.asList("Fred Bloggs"), 1992);
+        assertNull(library.checkoutAny(book1));
+        
+        BookCopy copy1 = library.buy(book1);
+        BookCopy copy2 = library.buy(book1);
+        BookCopy copy3 = library.buy(book2);
+        
+        BookCopy first = library.checkoutAny(book1);
+        BookCopy second = library.checkoutAny(book1);
+        assertEquals(new HashSet<>(Arrays.asList(copy1, copy2)), new HashSet<>(Arrays.asList(first, second)));
+        assertFalse(library.isAvailable(copy1));
+        assertFalse(library.isAvailable(copy2));
+        assertNull(library.checkoutAny(book1));
+        assertTrue(library.isAvailable(copy3));
+        
+        library.checkin(copy2);
+        assertSame(copy2, library.checkoutAny(book1));
+        library.checkin(copy1);
+        library.lose(copy1);
+        assertNull(library.checkoutAny(book1));
+        assertSame(copy3, library.checkoutAny(book2));
+    }
+    
+    @Test
+    public void testGetCopy() {
+        Library library = makeLibrary();
+        Library other = makeLibrary();
+        Book book1 = new Book("title", Arrays.asList("author"), 2000);
+        Book book2 = new Book("TITLE", Arrays.asList("Fred Bloggs"), 1992);
+        BookCopy copy1 = library.buy(book1);
+        BookCopy copy2 = library.buy(book2);
+        BookCopy copy3 = library.buy(book1);
+        BookCopy otherCopy = other.buy(book1);
+        assumeTrue("library does not number its copies", copy1.getId() != BookCopy.NO_ID);
+        
+        assertEquals(copy1.getId() + 1, copy2.getId());
+        assertEquals(copy2.getId() + 1, copy3.getId());
+        assertSame(copy1, library.getCopy(copy1.getId()));
+        assertSame(copy2, library.getCopy(copy2.getId()));
+        assertSame(copy3, library.getCopy(copy3.getId()));
+        assertSame(otherCopy, other.getCopy(otherCopy.getId()));
+        assertNull(library.getCopy(-1));
+        assertNull(library.getCopy(copy3.getId() + 1));
+        
+        library.checkout(copy2);
+        assertSame(copy2, library.getCopy(copy2.getId()));
+        library.lose(copy2);
+        assertNull(library.getCopy(copy2.getId()));
+        assertEquals(copy3.getId() + 1, library.buy(book2).getId());
+    }
+    
+    @Test
+    public void testBuyAll() {
+        Library library = makeLibrary();
+        Book book1 = new Book("title", Arrays.asList("author"), 2000);
+        Book book2 = new Book("TITLE", Arrays.asList("Fred Bloggs"), 1992);
+        assertEquals(Collections.emptyList(), library.buyAll(Collections.<Book>emptyList()));
+        
+        List<BookCopy> copies = library.buyAll(Arrays.asList(book1, book2, book1));
+        assertEquals(3, copies.size());
+        assertEquals(book1, copies.get(0).getBook());
+        assertEquals(book2, copies.get(1).getBook());
+        assertEquals(book1, copies.get(2).getBook());
+        assertEquals(3, new HashSet<>(copies).size());
+        for (BookCopy copy: copies) {
+            assertTrue(library.isAvailable(copy));
+            assertEquals(Condition.GOOD, copy.getCondition());
+        }
+        assertEquals(new HashSet<>(Arrays.asList(copies.get(0), copies.get(2))), library.allCopies(book1));
+        assertTrue(library.find("title").contains(book1));
+    }
+    
+    @Test
+    public void testCheckoutAllCheckinAll() {
+        Library library = makeLibrary();
+        Book book1 = new Book("title", Arrays.asList("author"), 2000);
+        Book book2 = new Book("TITLE", Arrays.asList("Fred Bloggs"), 1992);
+        BookCopy copy1 = library.buy(book1);
+        BookCopy copy2 = library.buy(book1);
+        BookCopy copy3 = library.buy(book2);
+        
+        library.checkoutAll(Collections.<BookCopy>emptyList());
+        assertEquals(2, library.availableCount(book1));
+        
+        library.checkoutAll(Arrays.asList(copy1, copy3));
+        assertFalse(library.isAvailable(copy1));
+        assertTrue(library.isAvailable(copy2));
+        assertFalse(library.isAvailable(copy3));
+        assertEquals(Collections.singleton(copy2), library.availableCopies(book1));
+        assertEquals(0, library.availableCount(book2));
+        
+        library.checkoutAll(Arrays.asList(copy2));
+        library.checkinAll(Arrays.asList(copy3, copy1, copy2));
+        assertEquals(new HashSet<>(Arrays.asList(copy1, copy2)), library.availableCopies(book1));
+        assertTrue(library.isAvailable(copy3));
+    }
+    
     @Test
     public void testFindMultipleCopiesOfSameBook() {
         Library library = makeLibrary();
@@ -193,6 +377,102 @@ public class LibraryTest {
         assertEquals(book2, book);
     }
     
+    @Test
+    public void testFindPage() {
+        Library library = makeLibrary();
+        Book book1 = new Book("title", Arrays.asList("author"), 2000);
+        Book book2 = new Book("title", Arrays.asList("author"), 2001);
+        Book book3 = new Book("title", Arrays.asList("author"), 1999);
+        Book book4 = new Book("subtitle", Arrays.asList("Fred Bloggs"), 1992);
+        library.buy(book1);
+        library.buy(book2);
+        library.buy(book3);
+        library.buy(book4);
+        
+        List<Book> books = library.find("title");
+        
+        assertEquals(4, books.size());
+        assertEquals(books.subList(0, 2), library.find("title", 0, 2));
+        assertEquals(books.subList(1, 4), library.find("title", 1, 3));
+        assertEquals(books.subList(3, 4), library.find("title", 3, 10));
+        assertEquals(0, library.find("title", 4, 10).size());
+        assertEquals(0, library.find("title", 0, 0).size());
+        assertEquals(books, library.find("title", 0, Integer.MAX_VALUE));
+    }
+    
+    @Test
+    public void testFindStream() {
+        Library library = makeLibrary();
+        Book book1 = new Book("title", Arrays.asList("author"), 2000);
+        Book book2 = new Book("title", Arrays.asList("author"), 2001);
+        Book book3 = new Book("subtitle", Arrays.asList("Fred Bloggs"), 1992);
+        library.buy(book1);
+        library.buy(book2);
+        library.buy(book3);
+        
+        assertEquals(library.find("title"), library.findStream("title").collect(Collectors.toList()));
+        assertEquals(book2, library.findStream("title").findFirst().get());
+        assertFalse(library.findStream("Mathematics").findAny().isPresent());
+    }
+    
+    @Test
+    public void testComplete() {
+        Library library = makeLibrary();
+        Book book1 = new Book("Emma", Arrays.asList("Jane Austen"), 1815);
+        Book book2 = new Book("Emma", Arrays.asList("Jane Austen"), 1816);
+        Book book3 = new Book("Emily of New Moon", Arrays.asList("L. M. Montgomery"), 1923);
+        Book book4 = new Book("Jane", Arrays.asList("Emily Bronte"), 1900);
+        library.buy(book1);
+        library.buy(book2);
+        BookCopy copy3 = library.buy(book3);
+        library.buy(book4);
+        
+        assertEquals(Arrays.asList("Emma", "Emily Bronte", "Emily of New Moon"), library.complete("Em", 5));
+        assertEquals(Arrays.asList("Emma"), library.complete("Em", 1));
+        assertEquals(Arrays.asList("Jane Austen", "Jane"), library.complete("Jane", 5));
+        assertEquals(Collections.emptyList(), library.complete("em", 5));
+        
+        library.lose(copy3);
+        assertEquals(Arrays.asList("Emma", "Emily Bronte"), library.complete("Em", 5));
+    }
+    
+    @Test
+    public void testCompleteMoreThanTen() {
+        Library library = makeLibrary();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            String title = "Volume " + (char) ('A' + i);
+            library.buy(new Book(title, Arrays.asList("Editor"), 2000));
+            expected.add(title);
+        }
+        library.buy(new Book("Volume Z", Arrays.asList("Volume Editor"), 2001));
+        library.buy(new Book("Volume Z", Arrays.asList("Volume Editor"), 2002));
+        expected.add(0, "Volume Editor");
+        expected.add(1, "Volume Z");
+        
+        assertEquals(expected.subList(0, 12), library.complete("Vol", 12));
+        assertEquals(expected, library.complete("Vol", 100));
+        assertEquals(Arrays.asList("Editor"), library.complete("Ed", 100));
+    }
+    
+    @Test
+    public void testDuplicateAuthors() {
+        Library library = makeLibrary();
+        Book book = new Book("T", Arrays.asList("Ann", "Ann"), 2000);
+        BookCopy copy1 = library.buy(book);
+        BookCopy copy2 = library.buy(book);
+        assertEquals(Arrays.asList(book), library.find("Ann"));
+        
+        library.lose(copy1);
+        assertEquals(Arrays.asList(book), library.find("Ann"));
+        library.lose(copy2);
+        assertEquals(0, library.find("Ann").size());
+        assertEquals(0, library.allCopies(book).size());
+        
+        library.buy(book);
+        assertEquals(Arrays.asList(book), library.find("Ann"));
+    }
+    
     @Test
     public void testLose() {
         Library library = makeLibrary();
@@ -217,6 +497,43 @@ public class LibraryTest {
         assertEquals(0, copies.size());
     }
     
+    @Test
+    public void testCopiesOfAnotherLibrary() {
+        Library library1 = makeLibrary();
+        Library library2 = makeLibrary();
+        Book book = new Book("title", Arrays.asList("author"), 2000);
+        BookCopy copy1 = library1.buy(book);
+        BookCopy copy2 = library2.buy(book);
+        
+        assertFalse(library2.isAvailable(copy1));
+        library2.checkout(copy1);
+        assertTrue(library1.isAvailable(copy1));
+        assertTrue(library2.isAvailable(copy2));
+        
+        library1.checkout(copy1);
+        library2.checkin(copy1);
+        assertFalse(library1.isAvailable(copy1));
+        library2.lose(copy1);
+        assertEquals(1, library2.allCopies(book).size());
+        assertEquals(1, library1.allCopies(book).size());
+    }
+    
+    @Test
+    public void testLostCopy() {
+        Library library = makeLibrary();
+        Book book = new Book("title", Arrays.asList("author"), 2000);
+        BookCopy copy1 = library.buy(book);
+        BookCopy copy2 = library.buy(book);
+        
+        library.checkout(copy1);
+        library.lose(copy1);
+        library.lose(copy1);
+        library.checkin(copy1);
+        assertFalse(library.isAvailable(copy1));
+        assertEquals(Collections.singleton(copy2), library.allCopies(book));
+        assertEquals(Collections.singleton(copy2), library.availableCopies(book));
+    }
+    
     @Test
     public void testExampleTest() {
         Library library = makeLibrary();
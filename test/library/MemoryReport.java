@@ -0,0 +1,63 @@
+package library;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reports the heap retained by a BigLibrary per book and per copy.
+ *
+ * Not a JUnit test; run it by hand with
+ *     java -cp bin library.MemoryReport [books] [copiesPerBook]
+ * Every buy is given a separately constructed Book with its own title and author Strings,
+ * as when the catalogue is loaded from a database, so duplicated strings and books show up
+ * in the totals unless the library shares them.
+ */
+public class MemoryReport {
+
+    private static final int AUTHORS = 1000;
+
+    public static void main(String[] args) {
+        final int books = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        final int copiesPerBook = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+        final long before = usedHeap();
+        final Library library = new BigLibrary();
+        for (int copy = 0; copy < copiesPerBook; copy++) {
+            for (int book = 0; book < books; book++) {
+                library.buy(loadBook(book));
+            }
+        }
+        final long bytes = usedHeap() - before;
+
+        System.out.printf("BigLibrary with %,d books x %d copies: %,d bytes, %,d bytes/book, %,d bytes/copy%n",
+                books, copiesPerBook, bytes, bytes / books, bytes / ((long) books * copiesPerBook));
+        // keep the library reachable until it has been measured
+        System.out.println(library.find("no such book").size());
+    }
+
+    /*
+     * @return a freshly constructed copy of the i-th book of a synthetic catalogue, sharing no
+     *         Strings with any other Book
+     */
+    private static Book loadBook(int i) {
+        final String title = new String("Collected Essays on Subject " + (i / 3) + ", Volume " + (i % 3 + 1));
+        final List<String> authors = new ArrayList<String>();
+        authors.add(new String("Author Number " + (i % AUTHORS)));
+        authors.add(new String("Editor Number " + (i % 7)));
+        return new Book(title, authors, 1900 + i % 120);
+    }
+
+    /*
+     * @return bytes of heap in use after collecting garbage
+     */
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+}
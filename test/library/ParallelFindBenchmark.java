@@ -0,0 +1,60 @@
+package library;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Benchmark for the speedup of a broad find ranked in parallel, by number of cores.
+ *
+ * Not a JUnit test; run it by hand with
+ *     java -cp bin library.ParallelFindBenchmark [books] [finds]
+ * For each parallelism 1, 2, 4, ... up to the number of available processors, it builds a
+ * catalogue index of books books ranking every query on a pool of that parallelism, and
+ * reports the time per find of the most common title word, in about a third of the
+ * catalogue, with the speedup over ranking on the calling thread.
+ */
+public class ParallelFindBenchmark {
+
+    private static final String QUERY = SyntheticCatalog.TITLE_WORDS.get(0);
+
+    public static void main(String[] args) {
+        final int books = args.length > 0 ? Integer.parseInt(args[0]) : 300000;
+        final int finds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        final long sequential = timeFind(new ForkJoinPool(1), Integer.MAX_VALUE, books, finds);
+        System.out.printf("sequential:      %,12d us/find%n", sequential / 1000);
+        final int processors = Runtime.getRuntime().availableProcessors();
+        for (int parallelism = 1; parallelism <= processors; parallelism *= 2) {
+            final long nanos = timeFind(new ForkJoinPool(parallelism), 0, books, finds);
+            System.out.printf("parallelism %3d: %,12d us/find, speedup %.2f%n",
+                    parallelism, nanos / 1000, (double) sequential / nanos);
+        }
+    }
+
+    /*
+     * @return best time in nanoseconds of one find of QUERY on an index of books books
+     */
+    private static long timeFind(ForkJoinPool pool, int parallelThreshold, int books, int finds) {
+        final CatalogIndex index = new CatalogIndex(pool, parallelThreshold);
+        for (int i = 0; i < books; i++) {
+            index.add(SyntheticCatalog.book(i));
+        }
+
+        // warm up, so the JIT has compiled find before we measure
+        int results = 0;
+        for (int i = 0; i < finds; i++) {
+            results += index.find(QUERY).size();
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < finds; i++) {
+            final long start = System.nanoTime();
+            results += index.find(QUERY).size();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        pool.shutdown();
+        if (results == 42) {
+            System.out.println();
+        }
+        return best;
+    }
+
+}
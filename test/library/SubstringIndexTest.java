@@ -0,0 +1,171 @@
+package library;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Test suite for SubstringIndex.
+ */
+public class SubstringIndexTest {
+
+    /*
+     * Testing strategy
+     * ==================
+     * 
+     * keysContaining:
+     *   query length 1, 2 (checked against every key), 3 (answered from n-gram postings),
+     *   >3 (verified candidates)
+     *   key shorter than an n-gram; key removed
+     *   query matches 0 keys, 1 key, >1 keys
+     *   query's n-grams all present but query itself absent
+     * keysContainedIn:
+     *   query contains 0 keys, 1 key, >1 keys, overlapping keys, a key more than once
+     * add/remove:
+     *   duplicate add, remove absent key, remove key that is a prefix of another key
+     * complete:
+     *   prefix matches no key, one key, more than MAX_COMPLETIONS keys; empty prefix
+     *   prefix is itself a key; k = 0, k < matches, k > MAX_COMPLETIONS with fewer or
+     *   more matches than k
+     *   ties in weight; weight raised and lowered; heaviest key removed
+     */
+    
+    @Test
+    public void testKeysContainingShortQuery() {
+        SubstringIndex index = new SubstringIndex();
+        index.add("Dune");
+        index.add("Dubliners");
+        
+        assertEquals(new HashSet<>(Arrays.asList("Dune", "Dubliners")), index.keysContaining("D"));
+        assertEquals(new HashSet<>(Arrays.asList("Dubliners")), index.keysContaining("ub"));
+        assertEquals(new HashSet<>(Arrays.asList("Dune")), index.keysContaining("une"));
+        assertEquals(Collections.emptySet(), index.keysContaining("x"));
+        
+        // a key too short to have any n-gram
+        index.add("ub");
+        assertEquals(new HashSet<>(Arrays.asList("Dubliners", "ub")), index.keysContaining("ub"));
+        index.remove("Dubliners");
+        assertEquals(new HashSet<>(Arrays.asList("ub")), index.keysContaining("ub"));
+        assertEquals(new HashSet<>(Arrays.asList("Dune", "ub")), index.keysContaining("u"));
+        assertEquals(Collections.emptySet(), index.keysContaining("ubl"));
+    }
+    
+    @Test
+    public void testKeysContainingLongQuery() {
+        SubstringIndex index = new SubstringIndex();
+        index.add("abcab");
+        index.add("abcabc");
+        index.add("xyz");
+        
+        assertEquals(new HashSet<>(Arrays.asList("abcab", "abcabc")), index.keysContaining("bcab"));
+        assertEquals(new HashSet<>(Arrays.asList("abcabc")), index.keysContaining("cabc"));
+        // every trigram of the query occurs in "abcab", but the query does not
+        assertEquals(Collections.emptySet(), index.keysContaining("abcabcab"));
+    }
+    
+    @Test
+    public void testKeysContainedIn() {
+        SubstringIndex index = new SubstringIndex();
+        index.add("Emma");
+        index.add("mm");
+        index.add("Jane");
+        index.add("Persuasion");
+        
+        assertEquals(Collections.emptySet(), index.keysContainedIn("Dune"));
+        assertEquals(new HashSet<>(Arrays.asList("Jane")), index.keysContainedIn("Jane Austen"));
+        assertEquals(new HashSet<>(Arrays.asList("Emma", "mm", "Jane")), index.keysContainedIn("Jane's Emma, mm"));
+    }
+    
+    @Test
+    public void testAddRemove() {
+        SubstringIndex index = new SubstringIndex();
+        index.add("Emma");
+        index.add("Emma");
+        index.add("Em");
+        assertEquals(2, index.size());
+        
+        index.remove("Emmanuel");
+        index.remove("Em");
+        assertEquals(1, index.size());
+        assertEquals(new HashSet<>(Arrays.asList("Emma")), index.keysContainedIn("Emma"));
+        assertEquals(new HashSet<>(Arrays.asList("Emma")), index.keysContaining("Em"));
+        
+        index.remove("Emma");
+        assertEquals(0, index.size());
+        assertEquals(Collections.emptySet(), index.keysContainedIn("Emma"));
+        assertEquals(Collections.emptySet(), index.keysContaining("Em"));
+    }
+    
+    @Test
+    public void testComplete() {
+        SubstringIndex index = new SubstringIndex();
+        index.add("Dune");
+        index.add("Dune Messiah");
+        index.add("Dubliners");
+        index.add("Emma");
+        
+        assertEquals(Arrays.asList("Dubliners", "Dune", "Dune Messiah"), index.complete("Du", 5));
+        assertEquals(Arrays.asList("Dune", "Dune Messiah"), index.complete("Dune", 5));
+        assertEquals(Arrays.asList("Dubliners"), index.complete("D", 1));
+        assertEquals(Collections.emptyList(), index.complete("D", 0));
+        assertEquals(Collections.emptyList(), index.complete("Dx", 5));
+        assertEquals(Arrays.asList("Dubliners", "Dune", "Dune Messiah", "Emma"), index.complete("", 5));
+    }
+    
+    @Test
+    public void testCompleteByWeight() {
+        SubstringIndex index = new SubstringIndex();
+        index.add("Dune");
+        index.add("Dune Messiah");
+        index.add("Dubliners");
+        
+        index.setWeight("Dune Messiah", 3);
+        index.setWeight("Dubliners", 2);
+        assertEquals(Arrays.asList("Dune Messiah", "Dubliners", "Dune"), index.complete("Du", 5));
+        assertEquals(Arrays.asList("Dune Messiah", "Dune"), index.complete("Dun", 5));
+        
+        index.setWeight("Dune Messiah", 1);
+        assertEquals(Arrays.asList("Dubliners", "Dune", "Dune Messiah"), index.complete("Du", 5));
+        
+        index.remove("Dubliners");
+        assertEquals(Arrays.asList("Dune", "Dune Messiah"), index.complete("Du", 5));
+        index.remove("Dune");
+        assertEquals(Arrays.asList("Dune Messiah"), index.complete("D", 5));
+    }
+    
+    @Test
+    public void testCompleteManyKeys() {
+        SubstringIndex index = new SubstringIndex();
+        for (int i = 0; i < 30; i++) {
+            index.add("Volume " + (char) ('A' + i));
+        }
+        index.setWeight("Volume Z", 5);
+        
+        final List<String> top = index.complete("Vol", SubstringIndex.MAX_COMPLETIONS);
+        assertEquals(SubstringIndex.MAX_COMPLETIONS, top.size());
+        assertEquals("Volume Z", top.get(0));
+        assertEquals("Volume A", top.get(1));
+        assertEquals("Volume I", top.get(SubstringIndex.MAX_COMPLETIONS - 1));
+        
+        final List<String> more = index.complete("Vol", SubstringIndex.MAX_COMPLETIONS + 2);
+        assertEquals(top, more.subList(0, SubstringIndex.MAX_COMPLETIONS));
+        assertEquals(Arrays.asList("Volume J", "Volume K"), more.subList(SubstringIndex.MAX_COMPLETIONS, more.size()));
+        
+        final List<String> all = index.complete("Vol", 100);
+        assertEquals(30, all.size());
+        assertEquals(more, all.subList(0, more.size()));
+        assertEquals("Volume " + (char) ('A' + 29), all.get(29));
+        assertEquals(all, index.complete("", 100));
+    }
+    
+    @Test(expected=AssertionError.class)
+    public void testAssertionsEnabled() {
+        assert false; // make sure assertions are enabled with VM argument: -ea
+    }
+
+}
@@ -0,0 +1,55 @@
+package library;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * SyntheticCatalog generates the books of a reproducible catalogue for the benchmarks.
+ *
+ * Books follow a skewed distribution like a real catalogue: a few authors write many books and
+ * a few title words appear in many titles.  The first title word, TITLE_WORDS.get(0), is the
+ * most common, in roughly a third of the titles.
+ */
+class SyntheticCatalog {
+
+    /** Words that titles are made of, most common first. */
+    public static final List<String> TITLE_WORDS = Arrays.asList(
+            "The", "Sea", "War", "Peace", "Night", "Garden", "River", "House", "Winter", "Stone",
+            "Fire", "Light", "Shadow", "Kingdom", "Road", "Island", "Letters", "History", "Song", "Glass");
+
+    // number of distinct authors, named "Author 0", "Author 1", ...
+    private static final int AUTHORS = 5000;
+
+    private SyntheticCatalog() {
+        // not instantiable
+    }
+
+    /**
+     * @param i index of the book, nonnegative
+     * @return the i-th book of the catalogue, the same on every call; its title is one to
+     *         three of TITLE_WORDS followed by i, so books of different indexes differ
+     */
+    public static Book book(int i) {
+        final Random random = new Random(i);
+        final StringBuilder title = new StringBuilder();
+        final int words = 1 + random.nextInt(3);
+        for (int w = 0; w < words; w++) {
+            title.append(TITLE_WORDS.get(skewed(random, TITLE_WORDS.size()))).append(' ');
+        }
+        title.append(i);
+        final String author = "Author " + skewed(random, AUTHORS);
+        return new Book(title.toString(), Arrays.asList(author), 1800 + random.nextInt(220));
+    }
+
+    /**
+     * @param random source of randomness
+     * @param n number of choices, positive
+     * @return an index in [0, n), skewed so that low indexes are much more likely
+     */
+    public static int skewed(Random random, int n) {
+        final double u = random.nextDouble();
+        return (int) (n * u * u);
+    }
+
+}